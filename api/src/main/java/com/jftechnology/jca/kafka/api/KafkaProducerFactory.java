@@ -15,9 +15,21 @@
  */
 package com.jftechnology.jca.kafka.api;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.resource.NotSupportedException;
 import javax.resource.ResourceException;
 
 import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
 
 /**
  * @author stephen.flynn@jftechnology.com
@@ -27,4 +39,76 @@ public interface KafkaProducerFactory<K, V> {
 
     Producer<K, V> createProducer() throws ResourceException;
 
+    /**
+     * Get a producer configured with the given producer property overrides,
+     * e.g. acks, compression.type or linger.ms, on top of the factory's
+     * configuration. Requests with equal overrides share a producer.
+     *
+     * @throws NotSupportedException by default, for factories without
+     *             overrides
+     * @since 1.1
+     */
+    default Producer<K, V> createProducer(Map<String, Object> overrides) throws ResourceException {
+
+        throw new NotSupportedException("Producer overrides not supported");
+    }
+
+    /**
+     * Send the records asynchronously on the factory's producer without
+     * flushing it.
+     *
+     * @return a stage completing with the metadata of every record, in order,
+     *         once all of them have been acknowledged, or exceptionally with
+     *         the first failure
+     * @since 1.1
+     */
+    default CompletionStage<List<RecordMetadata>> sendAll(Collection<? extends ProducerRecord<K, V>> records)
+            throws ResourceException {
+
+        Producer<K, V> producer = createProducer();
+        List<CompletableFuture<RecordMetadata>> futures = new ArrayList<>();
+
+        for (ProducerRecord<K, V> record : records) {
+
+            CompletableFuture<RecordMetadata> future = new CompletableFuture<>();
+
+            try {
+
+                producer.send(record, (metadata, ex) -> {
+
+                    if (ex == null) {
+
+                        future.complete(metadata);
+
+                    } else {
+
+                        future.completeExceptionally(ex);
+                    }
+                });
+
+            } catch (RuntimeException ex) {
+
+                // e.g. serialization failures are thrown rather than passed
+                // to the callback
+                future.completeExceptionally(ex);
+            }
+
+            futures.add(future);
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]))
+                .thenApply(v -> futures.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+    }
+
+    /**
+     * Stream variant of {@link #sendAll(Collection)}.
+     *
+     * @since 1.1
+     */
+    default CompletionStage<List<RecordMetadata>> sendAll(Stream<? extends ProducerRecord<K, V>> records)
+            throws ResourceException {
+
+        return sendAll(records.collect(Collectors.toList()));
+    }
+
 }
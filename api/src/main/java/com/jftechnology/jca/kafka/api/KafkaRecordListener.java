@@ -0,0 +1,32 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.api;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+/**
+ * KafkaRecordListener - message listener receiving one record at a time. The
+ * records of a poll are delivered one after the other to the same endpoint
+ * instance within a single delivery.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+public interface KafkaRecordListener<K, V> {
+
+    public void onRecord(ConsumerRecord<K, V> record);
+
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.consumer;
+
+import java.util.Timer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.resource.spi.BootstrapContext;
+import javax.resource.spi.UnavailableException;
+import javax.resource.spi.XATerminator;
+import javax.resource.spi.work.ExecutionContext;
+import javax.resource.spi.work.Work;
+import javax.resource.spi.work.WorkContext;
+import javax.resource.spi.work.WorkEvent;
+import javax.resource.spi.work.WorkException;
+import javax.resource.spi.work.WorkListener;
+import javax.resource.spi.work.WorkManager;
+import javax.resource.spi.work.WorkRejectedException;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * BenchmarkBootstrapContext - minimal stand-in for the container's bootstrap
+ * context, with a work manager backed by a fixed thread pool.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+class BenchmarkBootstrapContext implements BootstrapContext {
+
+    private final ExecutorService executor;
+
+    private final WorkManager workManager = new BenchmarkWorkManager();
+
+    /**
+     * @since 1.1
+     */
+    BenchmarkBootstrapContext(int threads) {
+
+        executor = Executors.newFixedThreadPool(threads, r -> {
+
+            Thread thread = new Thread(r, "benchmark-work");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public WorkManager getWorkManager() {
+
+        return workManager;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public XATerminator getXATerminator() {
+
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public Timer createTimer() throws UnavailableException {
+
+        return new Timer(true);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public boolean isContextSupported(Class<? extends WorkContext> workContextClass) {
+
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public TransactionSynchronizationRegistry getTransactionSynchronizationRegistry() {
+
+        return null;
+    }
+
+    /**
+     * @since 1.1
+     */
+    void shutdown() {
+
+        executor.shutdownNow();
+    }
+
+    /**
+     * Runs doWork on the calling thread and everything else on the pool,
+     * notifying listeners as a container would.
+     */
+    private class BenchmarkWorkManager implements WorkManager {
+
+        @Override
+        public void doWork(Work work) throws WorkException {
+
+            work.run();
+        }
+
+        @Override
+        public void doWork(Work work, long startTimeout, ExecutionContext execContext, WorkListener workListener)
+                throws WorkException {
+
+            run(work, workListener);
+        }
+
+        @Override
+        public long startWork(Work work) throws WorkException {
+
+            return startWork(work, INDEFINITE, null, null);
+        }
+
+        @Override
+        public long startWork(Work work, long startTimeout, ExecutionContext execContext,
+                WorkListener workListener) throws WorkException {
+
+            scheduleWork(work, startTimeout, execContext, workListener);
+
+            return 0;
+        }
+
+        @Override
+        public void scheduleWork(Work work) throws WorkException {
+
+            scheduleWork(work, INDEFINITE, null, null);
+        }
+
+        @Override
+        public void scheduleWork(Work work, long startTimeout, ExecutionContext execContext,
+                WorkListener workListener) throws WorkException {
+
+            try {
+
+                executor.execute(() -> run(work, workListener));
+
+            } catch (RejectedExecutionException e) {
+
+                WorkRejectedException rejected = new WorkRejectedException(e);
+
+                if (workListener != null) {
+
+                    workListener.workRejected(new WorkEvent(this, WorkEvent.WORK_REJECTED, work, rejected));
+                }
+
+                throw rejected;
+            }
+
+            if (workListener != null) {
+
+                workListener.workAccepted(new WorkEvent(this, WorkEvent.WORK_ACCEPTED, work, null));
+            }
+        }
+
+        private void run(Work work, WorkListener workListener) {
+
+            if (workListener != null) {
+
+                workListener.workStarted(new WorkEvent(this, WorkEvent.WORK_STARTED, work, null));
+            }
+
+            WorkException failure = null;
+
+            try {
+
+                work.run();
+
+            } catch (RuntimeException e) {
+
+                failure = new WorkException(e);
+            }
+
+            if (workListener != null) {
+
+                workListener.workCompleted(new WorkEvent(this, WorkEvent.WORK_COMPLETED, work, failure));
+            }
+        }
+    }
+}
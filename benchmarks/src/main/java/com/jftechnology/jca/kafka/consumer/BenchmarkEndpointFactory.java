@@ -0,0 +1,167 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.consumer;
+
+import java.lang.reflect.Method;
+
+import javax.resource.spi.UnavailableException;
+import javax.resource.spi.endpoint.MessageEndpoint;
+import javax.resource.spi.endpoint.MessageEndpointFactory;
+import javax.transaction.xa.XAResource;
+
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+
+import com.jftechnology.jca.kafka.api.KafkaListener;
+
+/**
+ * BenchmarkEndpointFactory - endpoint factory for either of two trivial
+ * endpoints, one implementing {@link KafkaListener}, so delivered directly,
+ * and one only declaring onMessage, so delivered reflectively.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+class BenchmarkEndpointFactory implements MessageEndpointFactory {
+
+    private final Class<? extends CountingEndpoint> endpointClass;
+
+    /**
+     * @since 1.1
+     */
+    BenchmarkEndpointFactory(boolean direct) {
+
+        endpointClass = direct ? DirectEndpoint.class : ReflectiveEndpoint.class;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public MessageEndpoint createEndpoint(XAResource xaResource) throws UnavailableException {
+
+        return direct() ? new DirectEndpoint() : new ReflectiveEndpoint();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public MessageEndpoint createEndpoint(XAResource xaResource, long timeout) throws UnavailableException {
+
+        return createEndpoint(xaResource);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public boolean isDeliveryTransacted(Method method) throws NoSuchMethodException {
+
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public String getActivationName() {
+
+        return endpointClass.getSimpleName();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public Class<?> getEndpointClass() {
+
+        return endpointClass;
+    }
+
+    private boolean direct() {
+
+        return endpointClass == DirectEndpoint.class;
+    }
+
+    /**
+     * Endpoint which only counts the records it's given.
+     */
+    public abstract static class CountingEndpoint implements MessageEndpoint {
+
+        private long count;
+
+        protected void count(ConsumerRecords<?, ?> records) {
+
+            count += records.count();
+        }
+
+        public long getCount() {
+
+            return count;
+        }
+
+        @Override
+        public void beforeDelivery(Method method) {
+
+            // no-op
+        }
+
+        @Override
+        public void afterDelivery() {
+
+            // no-op
+        }
+
+        @Override
+        public void release() {
+
+            // no-op
+        }
+    }
+
+    /**
+     * Endpoint called through {@link KafkaListener}.
+     */
+    public static class DirectEndpoint extends CountingEndpoint implements KafkaListener<String, String> {
+
+        @Override
+        public void onMessage(ConsumerRecords<String, String> records) {
+
+            count(records);
+        }
+    }
+
+    /**
+     * Endpoint called through reflection.
+     */
+    public static class ReflectiveEndpoint extends CountingEndpoint {
+
+        public void onMessage(ConsumerRecords<String, String> records) {
+
+            count(records);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.consumer;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.resource.ResourceException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ConsumerPropertiesBenchmark - cost of building the consumer properties of
+ * an activation spec, merged with the resource adapter defaults.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConsumerPropertiesBenchmark {
+
+    private KafkaActivationSpec activationSpec;
+
+    /**
+     * @since 1.1
+     */
+    @Setup
+    public void setUp() throws ResourceException {
+
+        KafkaResourceAdapter resourceAdapter = new KafkaResourceAdapter();
+        resourceAdapter.setBootstrapServers("localhost:9092");
+        resourceAdapter.setKeyDeserializer("org.apache.kafka.common.serialization.StringDeserializer");
+        resourceAdapter.setValueDeserializer("org.apache.kafka.common.serialization.StringDeserializer");
+
+        activationSpec = new KafkaActivationSpec();
+        activationSpec.setResourceAdapter(resourceAdapter);
+        activationSpec.setGroupId("benchmark");
+        activationSpec.setTopics("benchmark");
+        activationSpec.setFetchMaxWaitMs(100);
+        activationSpec.setMaxPollRecords(500);
+        activationSpec.setSessionTimeoutMs(10000);
+    }
+
+    /**
+     * @since 1.1
+     */
+    @Benchmark
+    public Map<String, Object> getConsumerProperties() {
+
+        return activationSpec.getConsumerProperties();
+    }
+}
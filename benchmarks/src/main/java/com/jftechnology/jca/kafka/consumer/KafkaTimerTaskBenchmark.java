@@ -0,0 +1,142 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.consumer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.resource.ResourceException;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * KafkaTimerTaskBenchmark - end to end record throughput of a
+ * {@link KafkaTimerTask} poll cycle, poll, delivery and commit, against a
+ * {@link MockConsumer}. Each invocation feeds one batch of records spread over
+ * the partitions and runs the task once, so results are in records per ms.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KafkaTimerTaskBenchmark {
+
+    private static final String TOPIC = "benchmark";
+
+    private static final int BATCH = 500;
+
+    private static final int PARTITIONS = 4;
+
+    @Param({"false", "true"})
+    private boolean partitionedDelivery;
+
+    private KafkaResourceAdapter resourceAdapter;
+
+    private BenchmarkBootstrapContext bootstrapContext;
+
+    private MockConsumer<String, String> consumer;
+
+    private KafkaTimerTask task;
+
+    private final long[] offsets = new long[PARTITIONS];
+
+    /**
+     * @since 1.1
+     */
+    @Setup
+    public void setUp() throws ResourceException, NoSuchMethodException {
+
+        resourceAdapter = new KafkaResourceAdapter();
+        resourceAdapter.setBootstrapServers("localhost:9092");
+
+        KafkaActivationSpec activationSpec = new KafkaActivationSpec();
+        activationSpec.setResourceAdapter(resourceAdapter);
+        activationSpec.setGroupId(TOPIC);
+        activationSpec.setTopics(TOPIC);
+        activationSpec.setFetchMaxWaitMs(0);
+        activationSpec.setPartitionedDelivery(partitionedDelivery);
+
+        bootstrapContext = new BenchmarkBootstrapContext(PARTITIONS);
+        consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+
+        task = new KafkaTimerTask(new BenchmarkEndpointFactory(true), activationSpec, bootstrapContext,
+                new KafkaConsumerMetrics(TOPIC), properties -> consumer);
+
+        List<TopicPartition> partitions = new ArrayList<>();
+        Map<TopicPartition, Long> beginningOffsets = new HashMap<>();
+
+        for (int i = 0; i < PARTITIONS; i++) {
+
+            partitions.add(new TopicPartition(TOPIC, i));
+            beginningOffsets.put(new TopicPartition(TOPIC, i), 0L);
+        }
+
+        consumer.rebalance(partitions);
+        consumer.updateBeginningOffsets(beginningOffsets);
+    }
+
+    /**
+     * @since 1.1
+     */
+    @TearDown
+    public void tearDown() {
+
+        task.close(1000);
+        bootstrapContext.shutdown();
+        resourceAdapter.stop();
+    }
+
+    /**
+     * @since 1.1
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void pollAndDeliver() {
+
+        for (int i = 0; i < BATCH; i++) {
+
+            int partition = i % PARTITIONS;
+
+            consumer.addRecord(new ConsumerRecord<>(TOPIC, partition, offsets[partition]++, "key" + i, "value"));
+        }
+
+        task.run();
+    }
+}
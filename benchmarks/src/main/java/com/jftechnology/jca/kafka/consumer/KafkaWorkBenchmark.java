@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.consumer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * KafkaWorkBenchmark - cost of a single {@link KafkaWork} delivery, through
+ * the listener interface or reflectively.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KafkaWorkBenchmark {
+
+    @Param({"true", "false"})
+    private boolean direct;
+
+    @Param({"1", "100"})
+    private int batchSize;
+
+    private KafkaEndpointPool endpointPool;
+
+    private KafkaEndpointInvoker invoker;
+
+    private final KafkaConsumerMetrics metrics = new KafkaConsumerMetrics("benchmark");
+
+    private ConsumerRecords<String, String> records;
+
+    /**
+     * @since 1.1
+     */
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+
+        BenchmarkEndpointFactory factory = new BenchmarkEndpointFactory(direct);
+
+        endpointPool = new KafkaEndpointPool(factory, 1);
+        invoker = KafkaEndpointInvoker.forEndpoint(factory.getEndpointClass());
+
+        List<ConsumerRecord<String, String>> list = new ArrayList<>();
+
+        for (int i = 0; i < batchSize; i++) {
+
+            list.add(new ConsumerRecord<>("benchmark", 0, i, "key" + i, "value" + i));
+        }
+
+        records = new ConsumerRecords<>(Collections.singletonMap(new TopicPartition("benchmark", 0), list));
+    }
+
+    /**
+     * @since 1.1
+     */
+    @Benchmark
+    public void deliver() {
+
+        new KafkaWork(endpointPool, records, invoker, metrics, null).run();
+    }
+}
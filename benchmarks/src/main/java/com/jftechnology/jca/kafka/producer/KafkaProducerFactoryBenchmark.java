@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.producer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.resource.ResourceException;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jftechnology.jca.kafka.api.KafkaProducerFactory;
+
+/**
+ * KafkaProducerFactoryBenchmark - record throughput of sending through the
+ * connection factory to a {@link MockProducer}, one blocking send at a time
+ * versus {@link KafkaProducerFactory#sendAll(java.util.Collection)}.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KafkaProducerFactoryBenchmark {
+
+    private static final int BATCH = 100;
+
+    private final MockProducer<String, String> producer = new MockProducer<>(true, new StringSerializer(),
+            new StringSerializer());
+
+    private final List<ProducerRecord<String, String>> records = new ArrayList<>();
+
+    private KafkaProducerFactory<String, String> factory;
+
+    /**
+     * @since 1.1
+     */
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() throws ResourceException {
+
+        factory = (KafkaProducerFactory<String, String>) new KafkaManagedConnectionFactory()
+                .createConnectionFactory((managedConnectionFactory, requestInfo) -> producer);
+
+        for (int i = 0; i < BATCH; i++) {
+
+            records.add(new ProducerRecord<>("benchmark", "key" + i, "value" + i));
+        }
+    }
+
+    /**
+     * @since 1.1
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public RecordMetadata send() throws ResourceException, InterruptedException, ExecutionException {
+
+        // the mock keeps a history of every record sent
+        producer.clear();
+
+        Producer<String, String> connection = factory.createProducer();
+        RecordMetadata metadata = null;
+
+        for (ProducerRecord<String, String> record : records) {
+
+            Future<RecordMetadata> future = connection.send(record);
+            metadata = future.get();
+        }
+
+        return metadata;
+    }
+
+    /**
+     * @since 1.1
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<RecordMetadata> sendAll() throws ResourceException {
+
+        producer.clear();
+
+        return factory.sendAll(records).toCompletableFuture().join();
+    }
+}
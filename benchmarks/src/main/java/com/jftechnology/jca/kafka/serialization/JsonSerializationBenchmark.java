@@ -0,0 +1,170 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.serialization;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JsonSerializationBenchmark - serialization and deserialization cost of the
+ * JSON serializers over payloads of a given number of members.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonSerializationBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int members;
+
+    private JsonObject object;
+
+    private byte[] json;
+
+    private byte[] binary;
+
+    private final JsonSerializer serializer = new JsonSerializer();
+
+    private final JsonBufferedSerializer bufferedSerializer = new JsonBufferedSerializer();
+
+    private final BinaryJsonSerializer binarySerializer = new BinaryJsonSerializer();
+
+    private final JsonDeserializer deserializer = new JsonDeserializer();
+
+    private final JsonStreamingDeserializer streamingDeserializer = new JsonStreamingDeserializer();
+
+    private final BinaryJsonDeserializer binaryDeserializer = new BinaryJsonDeserializer();
+
+    /**
+     * @since 1.1
+     */
+    @Setup
+    public void setUp() {
+
+        JsonObjectBuilder builder = Json.createObjectBuilder();
+
+        for (int i = 0; i < members; i++) {
+
+            switch (i % 4) {
+
+            case 0:
+                builder.add("string" + i, "value " + i);
+                break;
+
+            case 1:
+                builder.add("number" + i, i * 31L);
+                break;
+
+            case 2:
+                builder.add("flag" + i, i % 3 == 0);
+                break;
+
+            default:
+                JsonArrayBuilder array = Json.createArrayBuilder();
+
+                for (int j = 0; j < 4; j++) {
+
+                    array.add(Json.createObjectBuilder().add("id", j).add("name", "element " + j));
+                }
+
+                builder.add("array" + i, array);
+            }
+        }
+
+        object = builder.build();
+        json = serializer.serialize("benchmark", object);
+        binary = binarySerializer.serialize("benchmark", object);
+    }
+
+    /**
+     * @since 1.1
+     */
+    @Benchmark
+    public byte[] serialize() {
+
+        return serializer.serialize("benchmark", object);
+    }
+
+    /**
+     * @since 1.1
+     */
+    @Benchmark
+    public byte[] serializeBuffered() {
+
+        return bufferedSerializer.serialize("benchmark", object);
+    }
+
+    /**
+     * @since 1.1
+     */
+    @Benchmark
+    public byte[] serializeBinary() {
+
+        return binarySerializer.serialize("benchmark", object);
+    }
+
+    /**
+     * @since 1.1
+     */
+    @Benchmark
+    public JsonObject deserialize() {
+
+        return deserializer.deserialize("benchmark", json);
+    }
+
+    /**
+     * Lazily parsed, reading a single member as a listener filtering on one
+     * field would.
+     *
+     * @since 1.1
+     */
+    @Benchmark
+    public Object deserializeStreaming() {
+
+        return streamingDeserializer.deserialize("benchmark", json).get("string0");
+    }
+
+    /**
+     * @since 1.1
+     */
+    @Benchmark
+    public JsonObject deserializeBinary() {
+
+        return binaryDeserializer.deserialize("benchmark", binary);
+    }
+}
@@ -30,12 +30,13 @@ import javax.resource.spi.ResourceAdapter;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 
 import com.jftechnology.jca.kafka.api.KafkaListener;
+import com.jftechnology.jca.kafka.api.KafkaRecordListener;
 
 /**
  * @author stephen.flynn@jftechnology.com
  * @since 1.0
  */
-@Activation(messageListeners = KafkaListener.class)
+@Activation(messageListeners = {KafkaListener.class, KafkaRecordListener.class})
 public class KafkaActivationSpec implements ActivationSpec {
 
     private KafkaResourceAdapter ra;
@@ -64,6 +65,52 @@ public class KafkaActivationSpec implements ActivationSpec {
 
     private Long initialPollDelay = 2000L;
 
+    private Boolean pollLoop = false;
+
+    private Boolean adaptivePollInterval = false;
+
+    private Long maxPollInterval = 5000L;
+
+    private Integer maxPollRecords;
+
+    private Boolean partitionedDelivery = false;
+
+    private Boolean pipelined = false;
+
+    private Integer maxQueuedRecords = 1000;
+
+    private Integer keyOrderedLanes;
+
+    private Integer endpointPoolSize;
+
+    private Boolean parallelDeserialization = false;
+
+    private Boolean autoScale = false;
+
+    private Integer maxPoolSize;
+
+    private Long scaleUpLag = 1000L;
+
+    private Long scaleInterval = 30000L;
+
+    private Long shutdownTimeoutMs = 30000L;
+
+    private String partitionAssignmentStrategy;
+
+    private Integer commitIntervalRecords;
+
+    private Long commitIntervalMs;
+
+    private String retryTopic;
+
+    private Integer maxRetries = 3;
+
+    private Long retryDelayMs = 1000L;
+
+    private String deadLetterTopic;
+
+    private Boolean virtualThreadDelivery = false;
+
     private Integer fetchMinBytes = 1;
 
     private Integer maxPartitionFetchBytes;
@@ -146,6 +193,8 @@ public class KafkaActivationSpec implements ActivationSpec {
         add(properties, ConsumerConfig.METADATA_MAX_AGE_CONFIG, getMetadataMaxAgeMs());
         add(properties, ConsumerConfig.RECONNECT_BACKOFF_MS_CONFIG, getReconnectBackoffMs());
         add(properties, ConsumerConfig.RETRY_BACKOFF_MS_CONFIG, getRetryBackoffMs());
+        add(properties, ConsumerConfig.MAX_POLL_RECORDS_CONFIG, getMaxPollRecords());
+        add(properties, ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG, getPartitionAssignmentStrategy());
 
         // fill in from defaults
         ra.getConsumerProperties().entrySet().forEach(e -> properties.putIfAbsent(e.getKey(), e.getValue()));
@@ -405,6 +454,545 @@ public class KafkaActivationSpec implements ActivationSpec {
         this.initialPollDelay = initialPollDelay;
     }
 
+    /**
+     * Get the pollLoop property. When set each pool member runs as a single
+     * long-lived {@link javax.resource.spi.work.Work} polling continuously
+     * instead of being re-scheduled on a timer every pollInterval ms.
+     *
+     * @return Returns the pollLoop.
+     * @since 1.1
+     */
+    public Boolean getPollLoop() {
+
+        return pollLoop;
+    }
+
+    /**
+     * Set the pollLoop property.
+     *
+     * @param pollLoop The pollLoop to set.
+     * @since 1.1
+     */
+    public void setPollLoop(Boolean pollLoop) {
+
+        this.pollLoop = pollLoop;
+    }
+
+    /**
+     * Get the adaptivePollInterval property. When set the consumer polls again
+     * immediately after a full batch and backs off exponentially, from
+     * pollInterval up to maxPollInterval, over consecutive empty polls.
+     *
+     * @return Returns the adaptivePollInterval.
+     * @since 1.1
+     */
+    public Boolean getAdaptivePollInterval() {
+
+        return adaptivePollInterval;
+    }
+
+    /**
+     * Set the adaptivePollInterval property.
+     *
+     * @param adaptivePollInterval The adaptivePollInterval to set.
+     * @since 1.1
+     */
+    public void setAdaptivePollInterval(Boolean adaptivePollInterval) {
+
+        this.adaptivePollInterval = adaptivePollInterval;
+    }
+
+    /**
+     * Get the maxPollInterval property. The ceiling in ms of the adaptive poll
+     * interval back off.
+     *
+     * @return Returns the maxPollInterval.
+     * @since 1.1
+     */
+    public Long getMaxPollInterval() {
+
+        return maxPollInterval;
+    }
+
+    /**
+     * Set the maxPollInterval property.
+     *
+     * @param maxPollInterval The maxPollInterval to set.
+     * @since 1.1
+     */
+    public void setMaxPollInterval(Long maxPollInterval) {
+
+        this.maxPollInterval = maxPollInterval;
+    }
+
+    /**
+     * Get the partitionedDelivery property. When set each poll result is split
+     * by topic partition and the partitions are delivered concurrently, one
+     * endpoint per partition, before the offsets are committed.
+     *
+     * @return Returns the partitionedDelivery.
+     * @since 1.1
+     */
+    public Boolean getPartitionedDelivery() {
+
+        return partitionedDelivery;
+    }
+
+    /**
+     * Set the partitionedDelivery property.
+     *
+     * @param partitionedDelivery The partitionedDelivery to set.
+     * @since 1.1
+     */
+    public void setPartitionedDelivery(Boolean partitionedDelivery) {
+
+        this.partitionedDelivery = partitionedDelivery;
+    }
+
+    /**
+     * Get the pipelined property. When set the consumer keeps polling while
+     * earlier poll results are still being delivered, with at most one batch in
+     * flight per partition.
+     *
+     * @return Returns the pipelined.
+     * @since 1.1
+     */
+    public Boolean getPipelined() {
+
+        return pipelined;
+    }
+
+    /**
+     * Set the pipelined property.
+     *
+     * @param pipelined The pipelined to set.
+     * @since 1.1
+     */
+    public void setPipelined(Boolean pipelined) {
+
+        this.pipelined = pipelined;
+    }
+
+    /**
+     * Get the maxQueuedRecords property. The number of records queued or in
+     * flight for a partition above which a pipelined consumer pauses fetching
+     * from that partition.
+     *
+     * @return Returns the maxQueuedRecords.
+     * @since 1.1
+     */
+    public Integer getMaxQueuedRecords() {
+
+        return maxQueuedRecords;
+    }
+
+    /**
+     * Set the maxQueuedRecords property.
+     *
+     * @param maxQueuedRecords The maxQueuedRecords to set.
+     * @since 1.1
+     */
+    public void setMaxQueuedRecords(Integer maxQueuedRecords) {
+
+        this.maxQueuedRecords = maxQueuedRecords;
+    }
+
+    /**
+     * Get the keyOrderedLanes property. When set, poll results are sharded by
+     * record key hash across this many concurrently delivered lanes,
+     * preserving ordering per key rather than per partition. Implies
+     * pipelined delivery.
+     *
+     * @return Returns the keyOrderedLanes.
+     * @since 1.1
+     */
+    public Integer getKeyOrderedLanes() {
+
+        return keyOrderedLanes;
+    }
+
+    /**
+     * Set the keyOrderedLanes property.
+     *
+     * @param keyOrderedLanes The keyOrderedLanes to set.
+     * @since 1.1
+     */
+    public void setKeyOrderedLanes(Integer keyOrderedLanes) {
+
+        this.keyOrderedLanes = keyOrderedLanes;
+    }
+
+    /**
+     * Get the endpointPoolSize property. The number of idle message endpoints
+     * each consumer keeps for reuse across deliveries, defaults to one or the
+     * number of key ordered lanes.
+     *
+     * @return Returns the endpointPoolSize.
+     * @since 1.1
+     */
+    public Integer getEndpointPoolSize() {
+
+        return endpointPoolSize;
+    }
+
+    /**
+     * Set the endpointPoolSize property.
+     *
+     * @param endpointPoolSize The endpointPoolSize to set.
+     * @since 1.1
+     */
+    public void setEndpointPoolSize(Integer endpointPoolSize) {
+
+        this.endpointPoolSize = endpointPoolSize;
+    }
+
+    /**
+     * Get the parallelDeserialization property. When set the consumer fetches
+     * raw bytes and the configured key and value deserializers are run on the
+     * resource adapter's fork-join pool, spreading the records of each poll
+     * result across cores, rather than inside poll. Has no effect with a
+     * retry or dead-letter topic, records are then deserialized by the work
+     * delivering them.
+     *
+     * @return Returns the parallelDeserialization.
+     * @since 1.1
+     */
+    public Boolean getParallelDeserialization() {
+
+        return parallelDeserialization;
+    }
+
+    /**
+     * Set the parallelDeserialization property.
+     *
+     * @param parallelDeserialization The parallelDeserialization to set.
+     * @since 1.1
+     */
+    public void setParallelDeserialization(Boolean parallelDeserialization) {
+
+        this.parallelDeserialization = parallelDeserialization;
+    }
+
+    /**
+     * Get the autoScale property. When set consumers are added, up to
+     * maxPoolSize, while the lag per consumer is above scaleUpLag and removed
+     * again, down to poolSize, once it has fallen well below.
+     *
+     * @return Returns the autoScale.
+     * @since 1.1
+     */
+    public Boolean getAutoScale() {
+
+        return autoScale;
+    }
+
+    /**
+     * Set the autoScale property.
+     *
+     * @param autoScale The autoScale to set.
+     * @since 1.1
+     */
+    public void setAutoScale(Boolean autoScale) {
+
+        this.autoScale = autoScale;
+    }
+
+    /**
+     * Get the maxPoolSize property. The most consumers auto scaling will
+     * run, never more than the number of subscribed partitions, which is also
+     * the default.
+     *
+     * @return Returns the maxPoolSize.
+     * @since 1.1
+     */
+    public Integer getMaxPoolSize() {
+
+        return maxPoolSize;
+    }
+
+    /**
+     * Set the maxPoolSize property.
+     *
+     * @param maxPoolSize The maxPoolSize to set.
+     * @since 1.1
+     */
+    public void setMaxPoolSize(Integer maxPoolSize) {
+
+        this.maxPoolSize = maxPoolSize;
+    }
+
+    /**
+     * Get the scaleUpLag property. The lag in records per consumer above
+     * which auto scaling adds a consumer.
+     *
+     * @return Returns the scaleUpLag.
+     * @since 1.1
+     */
+    public Long getScaleUpLag() {
+
+        return scaleUpLag;
+    }
+
+    /**
+     * Set the scaleUpLag property.
+     *
+     * @param scaleUpLag The scaleUpLag to set.
+     * @since 1.1
+     */
+    public void setScaleUpLag(Long scaleUpLag) {
+
+        this.scaleUpLag = scaleUpLag;
+    }
+
+    /**
+     * Get the scaleInterval property. The number of ms between auto scaling
+     * decisions, each adding or removing at most one consumer.
+     *
+     * @return Returns the scaleInterval.
+     * @since 1.1
+     */
+    public Long getScaleInterval() {
+
+        return scaleInterval;
+    }
+
+    /**
+     * Set the scaleInterval property.
+     *
+     * @param scaleInterval The scaleInterval to set.
+     * @since 1.1
+     */
+    public void setScaleInterval(Long scaleInterval) {
+
+        this.scaleInterval = scaleInterval;
+    }
+
+    /**
+     * Get the shutdownTimeoutMs property. The number of ms each consumer is
+     * given on deactivation to finish delivering, commit its offsets and
+     * leave the group before it is abandoned.
+     *
+     * @return Returns the shutdownTimeoutMs.
+     * @since 1.1
+     */
+    public Long getShutdownTimeoutMs() {
+
+        return shutdownTimeoutMs;
+    }
+
+    /**
+     * Set the shutdownTimeoutMs property.
+     *
+     * @param shutdownTimeoutMs The shutdownTimeoutMs to set.
+     * @since 1.1
+     */
+    public void setShutdownTimeoutMs(Long shutdownTimeoutMs) {
+
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+    }
+
+    /**
+     * Get the partitionAssignmentStrategy property. A comma separated list of
+     * partition assignor class names, e.g.
+     * org.apache.kafka.clients.consumer.StickyAssignor to keep partitions
+     * with their current consumer as far as possible when the group changes,
+     * defaults to the client's range assignor.
+     *
+     * @return Returns the partitionAssignmentStrategy.
+     * @since 1.1
+     */
+    public String getPartitionAssignmentStrategy() {
+
+        return partitionAssignmentStrategy;
+    }
+
+    /**
+     * Set the partitionAssignmentStrategy property.
+     *
+     * @param partitionAssignmentStrategy The partitionAssignmentStrategy to
+     *            set.
+     * @since 1.1
+     */
+    public void setPartitionAssignmentStrategy(String partitionAssignmentStrategy) {
+
+        this.partitionAssignmentStrategy = partitionAssignmentStrategy;
+    }
+
+    /**
+     * Get the commitIntervalRecords property. Delivered offsets are committed
+     * once at least this many records have been delivered since the last
+     * commit, or commitIntervalMs has passed, whichever comes first. With
+     * neither set offsets are committed after every poll.
+     *
+     * @return Returns the commitIntervalRecords.
+     * @since 1.1
+     */
+    public Integer getCommitIntervalRecords() {
+
+        return commitIntervalRecords;
+    }
+
+    /**
+     * Set the commitIntervalRecords property.
+     *
+     * @param commitIntervalRecords The commitIntervalRecords to set.
+     * @since 1.1
+     */
+    public void setCommitIntervalRecords(Integer commitIntervalRecords) {
+
+        this.commitIntervalRecords = commitIntervalRecords;
+    }
+
+    /**
+     * Get the commitIntervalMs property. The most ms delivered offsets are
+     * held back before being committed, see commitIntervalRecords.
+     *
+     * @return Returns the commitIntervalMs.
+     * @since 1.1
+     */
+    public Long getCommitIntervalMs() {
+
+        return commitIntervalMs;
+    }
+
+    /**
+     * Set the commitIntervalMs property.
+     *
+     * @param commitIntervalMs The commitIntervalMs to set.
+     * @since 1.1
+     */
+    public void setCommitIntervalMs(Long commitIntervalMs) {
+
+        this.commitIntervalMs = commitIntervalMs;
+    }
+
+    /**
+     * Get the retryTopic property. Records the endpoint fails to process are
+     * published to a topic per attempt, this topic suffixed with "-1" up to
+     * "-" maxRetries, which are consumed alongside the endpoint's own topics,
+     * and redelivered once their retry delay has passed. Endpoints receive
+     * retried records with the attempt's retry topic as their topic, see the
+     * kafka-jca- headers for the original topic and attempt count.
+     *
+     * @return Returns the retryTopic.
+     * @since 1.1
+     */
+    public String getRetryTopic() {
+
+        return retryTopic;
+    }
+
+    /**
+     * Set the retryTopic property.
+     *
+     * @param retryTopic The retryTopic to set.
+     * @since 1.1
+     */
+    public void setRetryTopic(String retryTopic) {
+
+        this.retryTopic = retryTopic;
+    }
+
+    /**
+     * Get the maxRetries property. The number of times a failed record is
+     * retried before it is dead-lettered.
+     *
+     * @return Returns the maxRetries.
+     * @since 1.1
+     */
+    public Integer getMaxRetries() {
+
+        return maxRetries;
+    }
+
+    /**
+     * Set the maxRetries property.
+     *
+     * @param maxRetries The maxRetries to set.
+     * @since 1.1
+     */
+    public void setMaxRetries(Integer maxRetries) {
+
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Get the retryDelayMs property. The delay before the first retry of a
+     * failed record, doubling with each further attempt.
+     *
+     * @return Returns the retryDelayMs.
+     * @since 1.1
+     */
+    public Long getRetryDelayMs() {
+
+        return retryDelayMs;
+    }
+
+    /**
+     * Set the retryDelayMs property.
+     *
+     * @param retryDelayMs The retryDelayMs to set.
+     * @since 1.1
+     */
+    public void setRetryDelayMs(Long retryDelayMs) {
+
+        this.retryDelayMs = retryDelayMs;
+    }
+
+    /**
+     * Get the deadLetterTopic property. Records still failing after
+     * maxRetries, or straight away without a retry topic, are published to
+     * this topic with the exception in a header. With only a retry topic a
+     * record out of retries holds up its partition, redelivered every
+     * retryDelayMs, as does any record which can't be published. Without
+     * either topic failed records are only logged.
+     *
+     * @return Returns the deadLetterTopic.
+     * @since 1.1
+     */
+    public String getDeadLetterTopic() {
+
+        return deadLetterTopic;
+    }
+
+    /**
+     * Set the deadLetterTopic property.
+     *
+     * @param deadLetterTopic The deadLetterTopic to set.
+     * @since 1.1
+     */
+    public void setDeadLetterTopic(String deadLetterTopic) {
+
+        this.deadLetterTopic = deadLetterTopic;
+    }
+
+    /**
+     * Get the virtualThreadDelivery property. When true records are delivered
+     * on virtual threads started by the resource adapter instead of the
+     * container's work manager threads, suiting endpoints which spend most of
+     * their time blocked on I/O. Needs Java 21 or later, otherwise delivery
+     * stays on the work manager. The consumers still poll on the work
+     * manager's threads.
+     *
+     * @return Returns the virtualThreadDelivery.
+     * @since 1.1
+     */
+    public Boolean getVirtualThreadDelivery() {
+
+        return virtualThreadDelivery;
+    }
+
+    /**
+     * Set the virtualThreadDelivery property.
+     *
+     * @param virtualThreadDelivery The virtualThreadDelivery to set.
+     * @since 1.1
+     */
+    public void setVirtualThreadDelivery(Boolean virtualThreadDelivery) {
+
+        this.virtualThreadDelivery = virtualThreadDelivery;
+    }
+
     /**
      * @since 1.0
      */
@@ -612,4 +1200,20 @@ public class KafkaActivationSpec implements ActivationSpec {
 
         this.retryBackoffMs = retryBackoffMs;
     }
+
+    /**
+     * @since 1.1
+     */
+    public Integer getMaxPollRecords() {
+
+        return maxPollRecords;
+    }
+
+    /**
+     * @since 1.1
+     */
+    public void setMaxPollRecords(Integer maxPollRecords) {
+
+        this.maxPollRecords = maxPollRecords;
+    }
 }
@@ -0,0 +1,587 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.consumer;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleBinaryOperator;
+import java.util.stream.Collectors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * KafkaConsumerMetrics - collects the statistics of the consumers polling for
+ * a single endpoint activation and exposes them over JMX. Batch sizes and
+ * delivery and commit latencies are recorded by the tasks and work items as
+ * they run, consumer rates come from the consumers' own metrics and partition
+ * lag from end offsets periodically fetched on the polling thread. A consumer
+ * shared with other activations only contributes the rates of the activation's
+ * own topics.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+class KafkaConsumerMetrics implements KafkaConsumerMetricsMXBean {
+
+    private static final Logger LOGGER = Logger.getLogger(KafkaConsumerMetrics.class.getName());
+
+    private static final String FETCH_METRICS_GROUP = "consumer-fetch-manager-metrics";
+
+    private final String name;
+
+    private final Map<String, Consumer<?, ?>> consumers = new ConcurrentHashMap<>();
+
+    // the metric topic tags of shared consumers, by consumer id
+    private final Map<String, Set<String>> sharedTopics = new ConcurrentHashMap<>();
+
+    private final Map<String, Map<TopicPartition, Long>> lag = new ConcurrentHashMap<>();
+
+    private final LongAdder recordsPolled = new LongAdder();
+
+    private final LongAdder deliveryFailures = new LongAdder();
+
+    private final LongAdder commitFailures = new LongAdder();
+
+    private final LongAdder recordsCommitted = new LongAdder();
+
+    private final LongAdder recordsRetried = new LongAdder();
+
+    private final LongAdder recordsDeadLettered = new LongAdder();
+
+    private volatile String lastCommitFailure;
+
+    private final KafkaHistogram batchSizes = new KafkaHistogram();
+
+    // in microseconds
+    private final KafkaHistogram deliveryLatency = new KafkaHistogram();
+
+    private final KafkaHistogram commitLatency = new KafkaHistogram();
+
+    private ObjectName objectName;
+
+    /**
+     * @since 1.1
+     */
+    KafkaConsumerMetrics(String name) {
+
+        this.name = name;
+    }
+
+    /**
+     * Register with the platform MBean server, failures are logged rather than
+     * failing the activation.
+     *
+     * @since 1.1
+     */
+    synchronized void register() {
+
+        try {
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+            objectName = new ObjectName("com.jftechnology.jca.kafka:type=KafkaConsumerMetrics,name="
+                    + ObjectName.quote(name));
+            server.registerMBean(this, objectName);
+
+        } catch (JMException | SecurityException e) {
+
+            LOGGER.log(Level.WARNING, "KafkaConsumerMetrics :: unable to register :: " + name, e);
+            objectName = null;
+        }
+    }
+
+    /**
+     * @since 1.1
+     */
+    synchronized void unregister() {
+
+        if (objectName == null) {
+
+            return;
+        }
+
+        try {
+
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+
+        } catch (JMException | SecurityException e) {
+
+            LOGGER.log(Level.WARNING, "KafkaConsumerMetrics :: unable to unregister :: " + name, e);
+        }
+
+        objectName = null;
+    }
+
+    /**
+     * @since 1.1
+     */
+    void addConsumer(String id, Consumer<?, ?> consumer) {
+
+        consumers.put(id, consumer);
+    }
+
+    /**
+     * Add a consumer shared with other activations, of which only the given
+     * topics are this activation's.
+     *
+     * @since 1.1
+     */
+    void addConsumer(String id, Consumer<?, ?> consumer, Collection<String> topics) {
+
+        // the clients tag metrics with the topic's dots replaced
+        sharedTopics.put(id, topics.stream().map(topic -> topic.replace('.', '_')).collect(Collectors.toSet()));
+        consumers.put(id, consumer);
+    }
+
+    /**
+     * @since 1.1
+     */
+    void removeConsumer(String id) {
+
+        consumers.remove(id);
+        sharedTopics.remove(id);
+        lag.remove(id);
+    }
+
+    /**
+     * @since 1.1
+     */
+    void recordPoll(int count) {
+
+        recordsPolled.add(count);
+        batchSizes.record(count);
+    }
+
+    /**
+     * @since 1.1
+     */
+    void recordDelivery(long nanos, boolean failed) {
+
+        deliveryLatency.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+
+        if (failed) {
+
+            deliveryFailures.increment();
+        }
+    }
+
+    /**
+     * @since 1.1
+     */
+    void recordCommit(long nanos, Exception exception) {
+
+        commitLatency.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+
+        if (exception != null) {
+
+            commitFailures.increment();
+            lastCommitFailure = String.valueOf(exception);
+        }
+    }
+
+    /**
+     * Count a failed record sent to the retry or dead-letter topic.
+     *
+     * @since 1.1
+     */
+    void recordFailureRouted(boolean retry) {
+
+        (retry ? recordsRetried : recordsDeadLettered).increment();
+    }
+
+    /**
+     * Count records whose offsets have been handed to a commit.
+     *
+     * @since 1.1
+     */
+    void recordCommitted(int records) {
+
+        recordsCommitted.add(records);
+    }
+
+    /**
+     * Replace the partition lag last measured by a consumer.
+     *
+     * @since 1.1
+     */
+    void updateLag(String id, Map<TopicPartition, Long> partitionLag) {
+
+        if (consumers.containsKey(id)) {
+
+            lag.put(id, partitionLag);
+        }
+    }
+
+    /**
+     * @return the number of distinct partitions in the last lag measurements
+     * @since 1.1
+     */
+    int getPartitionCount() {
+
+        return (int) lag.values().stream().flatMap(partitions -> partitions.keySet().stream()).distinct().count();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public int getConsumerCount() {
+
+        return consumers.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public long getRecordsPolled() {
+
+        return recordsPolled.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public double getRecordsPerSecond() {
+
+        return aggregate("records-consumed-rate", Double::sum);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public long getBatchCount() {
+
+        return batchSizes.getCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public double getBatchSizeMean() {
+
+        return batchSizes.getMean();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public long getBatchSizeP50() {
+
+        return batchSizes.getPercentile(50);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public long getBatchSizeP99() {
+
+        return batchSizes.getPercentile(99);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public long getBatchSizeMax() {
+
+        return batchSizes.getMax();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public long getDeliveryCount() {
+
+        return deliveryLatency.getCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public long getDeliveryFailures() {
+
+        return deliveryFailures.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public double getDeliveryLatencyMean() {
+
+        return deliveryLatency.getMean() / 1000;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public double getDeliveryLatencyP50() {
+
+        return deliveryLatency.getPercentile(50) / 1000.0;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public double getDeliveryLatencyP99() {
+
+        return deliveryLatency.getPercentile(99) / 1000.0;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public double getDeliveryLatencyMax() {
+
+        return deliveryLatency.getMax() / 1000.0;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public long getCommitCount() {
+
+        return commitLatency.getCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public long getCommitFailures() {
+
+        return commitFailures.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public long getRecordsRetried() {
+
+        return recordsRetried.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public long getRecordsDeadLettered() {
+
+        return recordsDeadLettered.sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public String getLastCommitFailure() {
+
+        return lastCommitFailure;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public double getRecordsPerCommit() {
+
+        long commits = commitLatency.getCount();
+
+        return commits == 0 ? 0 : (double) recordsCommitted.sum() / commits;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public double getCommitLatencyMean() {
+
+        return commitLatency.getMean() / 1000;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public double getCommitLatencyP99() {
+
+        return commitLatency.getPercentile(99) / 1000.0;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public double getRecordsLagMax() {
+
+        return aggregate("records-lag-max", Math::max);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public Map<String, Long> getPartitionLag() {
+
+        Map<String, Long> result = new TreeMap<>();
+
+        lag.values().forEach(partitions -> partitions.forEach((partition, value) -> result.put(partition.toString(),
+                value)));
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public long getTotalLag() {
+
+        return lag.values().stream().flatMap(partitions -> partitions.values().stream()).mapToLong(Long::longValue)
+                .sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public void reset() {
+
+        batchSizes.reset();
+        deliveryLatency.reset();
+        commitLatency.reset();
+        deliveryFailures.reset();
+        commitFailures.reset();
+        recordsCommitted.reset();
+        recordsRetried.reset();
+        recordsDeadLettered.reset();
+        lastCommitFailure = null;
+    }
+
+    /**
+     * Combine a consumer level fetch metric across the consumers, ignoring
+     * the per topic breakdowns and values not yet measured, or for a shared
+     * consumer the breakdowns of this activation's topics.
+     */
+    private double aggregate(String metric, DoubleBinaryOperator operator) {
+
+        double result = 0;
+
+        for (Map.Entry<String, Consumer<?, ?>> consumer : consumers.entrySet()) {
+
+            Set<String> topics = sharedTopics.get(consumer.getKey());
+
+            for (Map.Entry<MetricName, ? extends Metric> entry : consumer.getValue().metrics().entrySet()) {
+
+                MetricName metricName = entry.getKey();
+                String topic = metricName.tags().get("topic");
+
+                if (metric.equals(metricName.name()) && FETCH_METRICS_GROUP.equals(metricName.group())
+                        && (topics == null ? topic == null : topics.contains(topic))) {
+
+                    Object value = entry.getValue().metricValue();
+
+                    if (value instanceof Number && Double.isFinite(((Number) value).doubleValue())) {
+
+                        result = operator.applyAsDouble(result, ((Number) value).doubleValue());
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.consumer;
+
+import java.util.Map;
+
+/**
+ * KafkaConsumerMetricsMXBean - management interface exposing the throughput,
+ * latency and lag of the consumers polling for a single endpoint activation.
+ * Latencies are in milliseconds.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+public interface KafkaConsumerMetricsMXBean {
+
+    /**
+     * @return the number of consumers polling for the endpoint
+     * @since 1.1
+     */
+    int getConsumerCount();
+
+    /**
+     * @return the total number of records polled
+     * @since 1.1
+     */
+    long getRecordsPolled();
+
+    /**
+     * @return the number of records consumed per second, summed over the
+     *         consumers
+     * @since 1.1
+     */
+    double getRecordsPerSecond();
+
+    /**
+     * @return the number of non empty poll results
+     * @since 1.1
+     */
+    long getBatchCount();
+
+    /**
+     * @since 1.1
+     */
+    double getBatchSizeMean();
+
+    /**
+     * @since 1.1
+     */
+    long getBatchSizeP50();
+
+    /**
+     * @since 1.1
+     */
+    long getBatchSizeP99();
+
+    /**
+     * @since 1.1
+     */
+    long getBatchSizeMax();
+
+    /**
+     * @return the number of deliveries, one per work item
+     * @since 1.1
+     */
+    long getDeliveryCount();
+
+    /**
+     * @return the number of deliveries where the endpoint failed
+     * @since 1.1
+     */
+    long getDeliveryFailures();
+
+    /**
+     * @since 1.1
+     */
+    double getDeliveryLatencyMean();
+
+    /**
+     * @since 1.1
+     */
+    double getDeliveryLatencyP50();
+
+    /**
+     * @since 1.1
+     */
+    double getDeliveryLatencyP99();
+
+    /**
+     * @since 1.1
+     */
+    double getDeliveryLatencyMax();
+
+    /**
+     * @return the number of completed offset commits
+     * @since 1.1
+     */
+    long getCommitCount();
+
+    /**
+     * @since 1.1
+     */
+    long getCommitFailures();
+
+    /**
+     * @return the number of failed records sent to the retry topic
+     * @since 1.1
+     */
+    long getRecordsRetried();
+
+    /**
+     * @return the number of failed records sent to the dead-letter topic
+     * @since 1.1
+     */
+    long getRecordsDeadLettered();
+
+    /**
+     * @return the exception of the most recent failed commit, null if none
+     *         failed
+     * @since 1.1
+     */
+    String getLastCommitFailure();
+
+    /**
+     * @return the average number of records covered by each commit, showing
+     *         the effect of commit batching
+     * @since 1.1
+     */
+    double getRecordsPerCommit();
+
+    /**
+     * @since 1.1
+     */
+    double getCommitLatencyMean();
+
+    /**
+     * @since 1.1
+     */
+    double getCommitLatencyP99();
+
+    /**
+     * @return the maximum lag in records of any partition, as reported by the
+     *         consumers' own fetch metrics
+     * @since 1.1
+     */
+    double getRecordsLagMax();
+
+    /**
+     * @return the lag in records of each assigned partition, keyed by
+     *         topic-partition, from the end offsets last fetched
+     * @since 1.1
+     */
+    Map<String, Long> getPartitionLag();
+
+    /**
+     * @return the sum of the partition lags
+     * @since 1.1
+     */
+    long getTotalLag();
+
+    /**
+     * Clear the batch, delivery and commit statistics.
+     *
+     * @since 1.1
+     */
+    void reset();
+}
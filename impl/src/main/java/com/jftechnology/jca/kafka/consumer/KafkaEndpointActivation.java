@@ -0,0 +1,563 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.consumer;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.resource.ResourceException;
+import javax.resource.spi.BootstrapContext;
+import javax.resource.spi.UnavailableException;
+import javax.resource.spi.endpoint.MessageEndpointFactory;
+
+/**
+ * KafkaEndpointActivation - the consumers polling for a single endpoint
+ * activation, started with the activation spec's poolSize and resizable at
+ * runtime over JMX or, with autoScale, from the measured lag.
+ * <p>
+ * Auto scaling adds a consumer while the total lag is above scaleUpLag per
+ * consumer, up to maxPoolSize and never beyond the number of partitions as
+ * extra group members would sit idle, and removes one once the lag would be
+ * under half the threshold with one consumer fewer.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+class KafkaEndpointActivation implements KafkaEndpointActivationMXBean {
+
+    private static final Logger LOGGER = Logger.getLogger(KafkaEndpointActivation.class.getName());
+
+    private final MessageEndpointFactory endpointFactory;
+
+    private final KafkaActivationSpec activationSpec;
+
+    private final BootstrapContext bootstrapContext;
+
+    private final String name;
+
+    private final KafkaConsumerMetrics metrics;
+
+    private final List<KafkaTimerTask> tasks = new ArrayList<>();
+
+    // the timers scheduling tasks when not using a poll loop
+    private final Map<KafkaTimerTask, Timer> timers = new HashMap<>();
+
+    private volatile boolean autoScale;
+
+    // set instead of the tasks when sharing a consumer
+    private KafkaSharedConsumer sharedConsumer;
+
+    private KafkaSharedConsumer.Route route;
+
+    private Timer scaleTimer;
+
+    private ObjectName objectName;
+
+    /**
+     * @since 1.1
+     */
+    KafkaEndpointActivation(MessageEndpointFactory endpointFactory, KafkaActivationSpec activationSpec,
+            BootstrapContext bootstrapContext) {
+
+        this.endpointFactory = endpointFactory;
+        this.activationSpec = activationSpec;
+        this.bootstrapContext = bootstrapContext;
+
+        name = endpointFactory.getActivationName() != null ? endpointFactory.getActivationName()
+                : endpointFactory.getEndpointClass().getName();
+        metrics = new KafkaConsumerMetrics(name);
+        autoScale = Boolean.TRUE.equals(activationSpec.getAutoScale());
+    }
+
+    /**
+     * Start poolSize consumers and register the management interfaces.
+     *
+     * @since 1.1
+     */
+    synchronized void start() throws ResourceException {
+
+        try {
+
+            if (Boolean.TRUE.equals(activationSpec.getResourceAdapter().getShareConsumers())
+                    && KafkaSharedConsumer.isShareable(activationSpec)) {
+
+                share();
+            }
+
+            if (sharedConsumer == null) {
+
+                resize(activationSpec.getPoolSize());
+
+                if (autoScale) {
+
+                    scheduleScaling();
+                }
+            }
+
+        } catch (ResourceException | RuntimeException e) {
+
+            // don't leave the consumers started so far running
+            stop();
+
+            throw e;
+        }
+
+        metrics.register();
+
+        try {
+
+            objectName = new ObjectName("com.jftechnology.jca.kafka:type=KafkaEndpointActivation,name="
+                    + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+
+        } catch (JMException | SecurityException e) {
+
+            LOGGER.log(Level.WARNING, "KafkaEndpointActivation :: unable to register :: " + name, e);
+            objectName = null;
+        }
+    }
+
+    /**
+     * Stop all consumers, closing them within one shutdownTimeoutMs, and
+     * unregister the management interfaces.
+     *
+     * @since 1.1
+     */
+    synchronized void stop() {
+
+        if (scaleTimer != null) {
+
+            scaleTimer.cancel();
+            scaleTimer = null;
+        }
+
+        close(new ArrayList<>(tasks));
+        tasks.clear();
+
+        if (sharedConsumer != null) {
+
+            activationSpec.getResourceAdapter().leaveSharedConsumer(sharedConsumer, route,
+                    activationSpec.getShutdownTimeoutMs());
+            route.close();
+
+            sharedConsumer = null;
+            route = null;
+        }
+
+        metrics.unregister();
+
+        if (objectName != null) {
+
+            try {
+
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+
+            } catch (JMException | SecurityException e) {
+
+                LOGGER.log(Level.WARNING, "KafkaEndpointActivation :: unable to unregister :: " + name, e);
+            }
+
+            objectName = null;
+        }
+    }
+
+    /**
+     * Join the adapter's consumer shared by activations like this one, unless
+     * it already subscribes to one of the topics.
+     */
+    private void share() throws ResourceException {
+
+        route = new KafkaSharedConsumer.Route(endpointFactory, activationSpec, metrics);
+
+        try {
+
+            sharedConsumer = activationSpec.getResourceAdapter().joinSharedConsumer(activationSpec, route);
+
+        } catch (ResourceException | RuntimeException e) {
+
+            route.close();
+            route = null;
+
+            throw e;
+        }
+
+        if (sharedConsumer == null) {
+
+            LOGGER.info("KafkaEndpointActivation :: topics already shared, using consumers of its own :: " + name);
+
+            route.close();
+            route = null;
+        }
+    }
+
+    /**
+     * Start or cancel consumers until there are the given number.
+     */
+    private synchronized void resize(int size) throws ResourceException {
+
+        if (size < 1) {
+
+            throw new IllegalArgumentException("Pool size must be at least 1 : " + size);
+        }
+
+        while (tasks.size() < size) {
+
+            tasks.add(startTask());
+        }
+
+        if (tasks.size() > size) {
+
+            List<KafkaTimerTask> removed = tasks.subList(size, tasks.size());
+
+            close(new ArrayList<>(removed));
+            removed.clear();
+        }
+    }
+
+    /**
+     * Close the given consumers one after another within a single
+     * shutdownTimeoutMs. All are cancelled first so their deliveries wind
+     * down together, and a timer wakes up any still blocked in a commit once
+     * the timeout has passed.
+     */
+    private void close(Collection<KafkaTimerTask> closing) {
+
+        long timeout = activationSpec.getShutdownTimeoutMs();
+        long deadline = System.currentTimeMillis() + timeout;
+        Set<KafkaTimerTask> open = ConcurrentHashMap.newKeySet();
+
+        for (KafkaTimerTask task : closing) {
+
+            task.cancel();
+            open.add(task);
+        }
+
+        Timer watchdog = null;
+
+        try {
+
+            watchdog = bootstrapContext.createTimer();
+
+            // commitSync has no timeout of its own
+            watchdog.schedule(new TimerTask() {
+
+                @Override
+                public void run() {
+
+                    open.forEach(KafkaTimerTask::cancel);
+                }
+
+            }, Math.max(1, timeout), 1000);
+
+        } catch (UnavailableException e) {
+
+            LOGGER.log(Level.WARNING, "KafkaEndpointActivation :: no timer to bound shutdown :: " + name, e);
+        }
+
+        try {
+
+            for (KafkaTimerTask task : closing) {
+
+                if (!task.close(Math.max(1, deadline - System.currentTimeMillis()))) {
+
+                    LOGGER.warning("KafkaEndpointActivation :: consumer not closed cleanly :: " + task.getId());
+                }
+
+                open.remove(task);
+            }
+
+        } finally {
+
+            if (watchdog != null) {
+
+                watchdog.cancel();
+            }
+        }
+
+        for (KafkaTimerTask task : closing) {
+
+            Timer timer = timers.remove(task);
+
+            if (timer != null) {
+
+                timer.cancel();
+            }
+        }
+    }
+
+    /**
+     * Wake up all consumers so their deliveries start winding down ahead of
+     * {@link #stop()}.
+     *
+     * @since 1.1
+     */
+    synchronized void cancel() {
+
+        for (KafkaTimerTask task : tasks) {
+
+            task.cancel();
+        }
+    }
+
+    private KafkaTimerTask startTask() throws ResourceException {
+
+        KafkaTimerTask task;
+
+        try {
+
+            task = new KafkaTimerTask(endpointFactory, activationSpec, bootstrapContext, metrics);
+
+        } catch (NoSuchMethodException | SecurityException e) {
+
+            throw new ResourceException(e);
+        }
+
+        try {
+
+            if (Boolean.TRUE.equals(activationSpec.getPollLoop())) {
+
+                // one long-lived work per consumer, polling back-to-back
+                // until deactivation
+                bootstrapContext.getWorkManager().startWork(new KafkaPollWork(task,
+                        activationSpec.getInitialPollDelay(), activationSpec.getPollInterval()));
+
+            } else {
+
+                Timer timer = bootstrapContext.createTimer();
+
+                timer.schedule(task, activationSpec.getInitialPollDelay(), activationSpec.getPollInterval());
+                timers.put(task, timer);
+            }
+
+        } catch (ResourceException e) {
+
+            task.close(0);
+
+            throw e;
+        }
+
+        return task;
+    }
+
+    private synchronized void scheduleScaling() throws ResourceException {
+
+        if (scaleTimer != null) {
+
+            return;
+        }
+
+        long interval = activationSpec.getScaleInterval();
+
+        scaleTimer = bootstrapContext.createTimer();
+        scaleTimer.schedule(new TimerTask() {
+
+            @Override
+            public void run() {
+
+                scale();
+            }
+        }, interval, interval);
+    }
+
+    /**
+     * Make one auto scaling decision.
+     */
+    private synchronized void scale() {
+
+        int partitions = metrics.getPartitionCount();
+
+        // nothing to go on until the consumers have measured some lag
+        if (!autoScale || partitions == 0 || tasks.isEmpty()) {
+
+            return;
+        }
+
+        int size = tasks.size();
+        long lag = metrics.getTotalLag();
+        long threshold = activationSpec.getScaleUpLag();
+        int target = size;
+
+        if (lag > threshold * size && size < getMaxPoolSize()) {
+
+            target = size + 1;
+
+        } else if (size > getMinPoolSize() && lag < threshold * (size - 1) / 2) {
+
+            target = size - 1;
+        }
+
+        if (target != size) {
+
+            LOGGER.info(String.format("KafkaEndpointActivation :: scaling %s from %d to %d consumers, lag %d",
+                    name, size, target, lag));
+
+            try {
+
+                resize(target);
+
+            } catch (ResourceException e) {
+
+                LOGGER.log(Level.WARNING, "KafkaEndpointActivation :: unable to scale :: " + name, e);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public synchronized int getPoolSize() {
+
+        return sharedConsumer != null ? 1 : tasks.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public synchronized void setPoolSize(int poolSize) {
+
+        if (sharedConsumer != null) {
+
+            throw new IllegalStateException(name + " shares a consumer, its pool size can't be changed");
+        }
+
+        try {
+
+            resize(poolSize);
+
+        } catch (ResourceException e) {
+
+            throw new IllegalStateException("Unable to resize " + name + " : " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public int getMinPoolSize() {
+
+        return activationSpec.getPoolSize();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public int getMaxPoolSize() {
+
+        int partitions = metrics.getPartitionCount();
+        Integer maxPoolSize = activationSpec.getMaxPoolSize();
+
+        if (maxPoolSize == null) {
+
+            return Math.max(getMinPoolSize(), partitions);
+        }
+
+        return partitions == 0 ? maxPoolSize : Math.min(maxPoolSize, partitions);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public int getPartitionCount() {
+
+        return metrics.getPartitionCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public boolean isAutoScale() {
+
+        return autoScale;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public synchronized void setAutoScale(boolean autoScale) {
+
+        this.autoScale = autoScale;
+
+        if (autoScale) {
+
+            try {
+
+                scheduleScaling();
+
+            } catch (ResourceException e) {
+
+                throw new IllegalStateException("Unable to schedule auto scaling of " + name, e);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public synchronized void addConsumer() {
+
+        setPoolSize(tasks.size() + 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public synchronized void removeConsumer() {
+
+        if (tasks.size() > 1) {
+
+            setPoolSize(tasks.size() - 1);
+        }
+    }
+}
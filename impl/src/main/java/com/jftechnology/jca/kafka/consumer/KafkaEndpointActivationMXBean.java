@@ -0,0 +1,84 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.consumer;
+
+/**
+ * KafkaEndpointActivationMXBean - management interface for resizing the pool
+ * of consumers polling for a single endpoint activation at runtime, manually
+ * or by auto scaling on lag.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+public interface KafkaEndpointActivationMXBean {
+
+    /**
+     * @return the number of consumers currently polling
+     * @since 1.1
+     */
+    int getPoolSize();
+
+    /**
+     * Start or stop consumers to reach the given number.
+     *
+     * @since 1.1
+     */
+    void setPoolSize(int poolSize);
+
+    /**
+     * @return the configured poolSize, which auto scaling won't go below
+     * @since 1.1
+     */
+    int getMinPoolSize();
+
+    /**
+     * @return the most consumers auto scaling will run, bounded by the
+     *         partition count
+     * @since 1.1
+     */
+    int getMaxPoolSize();
+
+    /**
+     * @return the number of partitions assigned across the consumers, as of
+     *         the last lag measurement
+     * @since 1.1
+     */
+    int getPartitionCount();
+
+    /**
+     * @since 1.1
+     */
+    boolean isAutoScale();
+
+    /**
+     * @since 1.1
+     */
+    void setAutoScale(boolean autoScale);
+
+    /**
+     * Start one more consumer.
+     *
+     * @since 1.1
+     */
+    void addConsumer();
+
+    /**
+     * Stop one consumer, leaving at least one.
+     *
+     * @since 1.1
+     */
+    void removeConsumer();
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.consumer;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import javax.resource.spi.endpoint.MessageEndpoint;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+
+import com.jftechnology.jca.kafka.api.KafkaListener;
+import com.jftechnology.jca.kafka.api.KafkaRecordListener;
+
+/**
+ * KafkaEndpointInvoker - resolves the listener method implemented by an
+ * endpoint class and invokes it with a batch of records, either once for the
+ * whole batch ({@link KafkaListener}) or once per record
+ * ({@link KafkaRecordListener}).
+ * <p>
+ * Endpoint proxies implement the message listener interface, so the listener
+ * is called directly through that interface, reflection is only used as a
+ * fallback for endpoints which don't.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+class KafkaEndpointInvoker {
+
+    private final Method method;
+
+    private final boolean perRecord;
+
+    private KafkaEndpointInvoker(Method method, boolean perRecord) {
+
+        this.method = method;
+        this.perRecord = perRecord;
+    }
+
+    /**
+     * @since 1.1
+     */
+    static KafkaEndpointInvoker forEndpoint(Class<?> endpointClass) throws NoSuchMethodException {
+
+        if (!KafkaListener.class.isAssignableFrom(endpointClass)
+                && KafkaRecordListener.class.isAssignableFrom(endpointClass)) {
+
+            return new KafkaEndpointInvoker(endpointClass.getMethod("onRecord", ConsumerRecord.class), true);
+        }
+
+        return new KafkaEndpointInvoker(endpointClass.getMethod("onMessage", ConsumerRecords.class), false);
+    }
+
+    /**
+     * @return the listener method, as passed to
+     *         {@link MessageEndpoint#beforeDelivery(Method)}
+     * @since 1.1
+     */
+    Method getMethod() {
+
+        return method;
+    }
+
+    /**
+     * @return true if the endpoint is called once per record
+     * @since 1.1
+     */
+    boolean isPerRecord() {
+
+        return perRecord;
+    }
+
+    /**
+     * Deliver the records to the endpoint.
+     *
+     * @since 1.1
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    void invoke(MessageEndpoint endpoint, ConsumerRecords<?, ?> records)
+            throws IllegalAccessException, InvocationTargetException {
+
+        if (perRecord && endpoint instanceof KafkaRecordListener) {
+
+            KafkaRecordListener listener = (KafkaRecordListener) endpoint;
+
+            for (ConsumerRecord<?, ?> record : records) {
+
+                listener.onRecord(record);
+            }
+
+        } else if (!perRecord && endpoint instanceof KafkaListener) {
+
+            ((KafkaListener) endpoint).onMessage(records);
+
+        } else if (perRecord) {
+
+            for (ConsumerRecord<?, ?> record : records) {
+
+                method.invoke(endpoint, record);
+            }
+
+        } else {
+
+            method.invoke(endpoint, records);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.consumer;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.logging.Logger;
+
+import javax.resource.spi.UnavailableException;
+import javax.resource.spi.endpoint.MessageEndpoint;
+import javax.resource.spi.endpoint.MessageEndpointFactory;
+
+/**
+ * KafkaEndpointPool - keeps a small number of idle {@link MessageEndpoint}
+ * instances so they can be reused across deliveries instead of being created
+ * and released for every poll. Endpoints which failed a delivery are
+ * discarded, all idle endpoints are released on close.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+class KafkaEndpointPool {
+
+    private static final Logger LOGGER = Logger.getLogger(KafkaEndpointPool.class.getName());
+
+    private final MessageEndpointFactory factory;
+
+    private final int maxIdle;
+
+    private final Deque<MessageEndpoint> idle = new ArrayDeque<>();
+
+    private boolean closed;
+
+    /**
+     * @since 1.1
+     */
+    KafkaEndpointPool(MessageEndpointFactory factory, int maxIdle) {
+
+        this.factory = factory;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * @return an idle endpoint, or a newly created one if none is available
+     * @since 1.1
+     */
+    MessageEndpoint acquire() throws UnavailableException {
+
+        synchronized (idle) {
+
+            if (!idle.isEmpty()) {
+
+                return idle.pop();
+            }
+        }
+
+        LOGGER.fine("KafkaEndpointPool :: create endpoint");
+
+        return factory.createEndpoint(null);
+    }
+
+    /**
+     * Return an endpoint after a successful delivery.
+     *
+     * @since 1.1
+     */
+    void release(MessageEndpoint endpoint) {
+
+        synchronized (idle) {
+
+            if (!closed && idle.size() < maxIdle) {
+
+                idle.push(endpoint);
+
+                return;
+            }
+        }
+
+        endpoint.release();
+    }
+
+    /**
+     * Release an endpoint which failed a delivery rather than reusing it.
+     *
+     * @since 1.1
+     */
+    void discard(MessageEndpoint endpoint) {
+
+        LOGGER.fine("KafkaEndpointPool :: discard endpoint");
+
+        endpoint.release();
+    }
+
+    /**
+     * Release all idle endpoints, endpoints returned afterwards are released
+     * straight away.
+     *
+     * @since 1.1
+     */
+    void close() {
+
+        synchronized (idle) {
+
+            closed = true;
+
+            idle.forEach(MessageEndpoint::release);
+            idle.clear();
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.consumer;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.resource.spi.work.ExecutionContext;
+import javax.resource.spi.work.Work;
+import javax.resource.spi.work.WorkCompletedException;
+import javax.resource.spi.work.WorkEvent;
+import javax.resource.spi.work.WorkException;
+import javax.resource.spi.work.WorkListener;
+import javax.resource.spi.work.WorkManager;
+import javax.resource.spi.work.WorkRejectedException;
+
+/**
+ * KafkaExecutorWorkManager - work manager running work on an executor owned
+ * by the resource adapter rather than the container's thread pool, notifying
+ * work listeners as the container would. Used to deliver on virtual threads,
+ * so endpoints blocking on I/O don't hold on to scarce container threads.
+ * <p>
+ * Work runs without the container's execution or security context, as any
+ * thread created by the resource adapter would. As with container work
+ * managers a rejected item is both notified to its listener and thrown, so
+ * listeners must tolerate seeing the rejection of work whose scheduling threw.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+class KafkaExecutorWorkManager implements WorkManager {
+
+    private static final Logger LOGGER = Logger.getLogger(KafkaExecutorWorkManager.class.getName());
+
+    private final ExecutorService executor;
+
+    /**
+     * @since 1.1
+     */
+    KafkaExecutorWorkManager(ExecutorService executor) {
+
+        this.executor = executor;
+    }
+
+    /**
+     * @return a work manager starting a virtual thread per work item, or null
+     *         if the JDK doesn't support virtual threads
+     * @since 1.1
+     */
+    static KafkaExecutorWorkManager forVirtualThreads() {
+
+        try {
+
+            // Java 21, looked up reflectively as the adapter targets Java 8
+            return new KafkaExecutorWorkManager((ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null));
+
+        } catch (ReflectiveOperationException | SecurityException ex) {
+
+            LOGGER.log(Level.FINE, "KafkaExecutorWorkManager :: virtual threads not supported", ex);
+
+            return null;
+        }
+    }
+
+    /**
+     * Stop accepting work, letting work already started finish.
+     *
+     * @since 1.1
+     */
+    void shutdown() {
+
+        executor.shutdown();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public void doWork(Work work) throws WorkException {
+
+        doWork(work, INDEFINITE, null, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public void doWork(Work work, long startTimeout, ExecutionContext execContext, WorkListener workListener)
+            throws WorkException {
+
+        Future<WorkException> future = submit(work, workListener);
+
+        try {
+
+            WorkException failure = future.get();
+
+            if (failure != null) {
+
+                throw failure;
+            }
+
+        } catch (InterruptedException ex) {
+
+            Thread.currentThread().interrupt();
+            work.release();
+
+            throw new WorkCompletedException(ex);
+
+        } catch (ExecutionException ex) {
+
+            throw new WorkCompletedException(ex.getCause());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public long startWork(Work work) throws WorkException {
+
+        return startWork(work, INDEFINITE, null, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public long startWork(Work work, long startTimeout, ExecutionContext execContext, WorkListener workListener)
+            throws WorkException {
+
+        long start = System.currentTimeMillis();
+
+        submit(work, workListener);
+
+        return System.currentTimeMillis() - start;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public void scheduleWork(Work work) throws WorkException {
+
+        scheduleWork(work, INDEFINITE, null, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public void scheduleWork(Work work, long startTimeout, ExecutionContext execContext, WorkListener workListener)
+            throws WorkException {
+
+        submit(work, workListener);
+    }
+
+    private Future<WorkException> submit(Work work, WorkListener workListener) throws WorkRejectedException {
+
+        try {
+
+            return executor.submit(() -> run(work, workListener));
+
+        } catch (RejectedExecutionException ex) {
+
+            WorkRejectedException rejected = new WorkRejectedException(ex);
+
+            if (workListener != null) {
+
+                workListener.workRejected(new WorkEvent(this, WorkEvent.WORK_REJECTED, work, rejected));
+            }
+
+            throw rejected;
+        }
+    }
+
+    private WorkException run(Work work, WorkListener workListener) {
+
+        if (workListener != null) {
+
+            // notified here rather than after submit, which could return
+            // after the work has started or even completed
+            workListener.workAccepted(new WorkEvent(this, WorkEvent.WORK_ACCEPTED, work, null));
+            workListener.workStarted(new WorkEvent(this, WorkEvent.WORK_STARTED, work, null));
+        }
+
+        WorkException failure = null;
+
+        try {
+
+            work.run();
+
+        } catch (Throwable ex) {
+
+            // errors too, or work waited on by its listener would never
+            // complete
+            failure = new WorkCompletedException(ex);
+
+        } finally {
+
+            if (workListener != null) {
+
+                workListener.workCompleted(new WorkEvent(this, WorkEvent.WORK_COMPLETED, work, failure));
+            }
+        }
+
+        return failure;
+    }
+}
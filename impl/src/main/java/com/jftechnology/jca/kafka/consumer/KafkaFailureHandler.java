@@ -0,0 +1,492 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.consumer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+
+/**
+ * KafkaFailureHandler - routes records the endpoint failed to process away
+ * from their partition so the rest of it keeps flowing. A failed record is
+ * published to the retry topic for its attempt, the retry topic suffixed
+ * with "-" and the attempt number, with headers counting the attempts and
+ * giving the time it is next due, until maxRetries is reached and it is
+ * published to the dead-letter topic with the exception instead.
+ * <p>
+ * The retry topics are consumed alongside the endpoint's own topics. Records
+ * polled from them before they are due are held back without blocking - the
+ * consumer seeks back to the first of them and pauses the partition until it
+ * is due, while every other partition carries on. As each retry topic only
+ * holds records of one attempt, with the same delay, a record waiting at the
+ * head of a partition is never due later than those behind it.
+ * <p>
+ * The consumer fetches raw bytes and each record is only deserialized by the
+ * work delivering it, so a failed record is published by the resource
+ * adapter's byte array producer exactly as it was consumed, whatever the
+ * activation's deserializers, and a record which can't be deserialized is
+ * handled like any other failure. Each send is waited for before the work
+ * completes so the record's offset is only committed once it is safely on
+ * the retry or dead-letter topic. A record which can't be sent, or is out of
+ * retries with no dead-letter topic, is never skipped - the work stops there
+ * and reports the offsets its partitions have to be redelivered from, the
+ * polling thread then keeps the commit behind them, seeks back and holds the
+ * partitions for retryDelayMs. Only deserializing, {@link
+ * #failed(ConsumerRecord, Throwable)} and {@link #rewind(Map)} are thread
+ * safe, the rest is called on the polling thread.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+class KafkaFailureHandler {
+
+    /**
+     * Header counting the failed deliveries of a record.
+     */
+    static final String ATTEMPTS_HEADER = "kafka-jca-attempts";
+
+    /**
+     * Header giving the epoch ms a retried record is next due.
+     */
+    static final String DUE_HEADER = "kafka-jca-due";
+
+    /**
+     * Header giving the topic a retried or dead-lettered record was first
+     * consumed from.
+     */
+    static final String ORIGINAL_TOPIC_HEADER = "kafka-jca-original-topic";
+
+    /**
+     * Header giving the exception which dead-lettered a record.
+     */
+    static final String EXCEPTION_HEADER = "kafka-jca-exception";
+
+    private static final Logger LOGGER = Logger.getLogger(KafkaFailureHandler.class.getName());
+
+    private final String id;
+
+    private final Producer<byte[], byte[]> producer;
+
+    private final KafkaParallelDeserializer deserializer;
+
+    // indexed by attempt - 1
+    private final List<String> retryTopics = new ArrayList<>();
+
+    private final String deadLetterTopic;
+
+    private final int maxRetries;
+
+    private final long retryDelayMs;
+
+    private final KafkaConsumerMetrics metrics;
+
+    // partitions paused until their next record is due
+    private final Map<TopicPartition, Long> delayed = new HashMap<>();
+
+    // offsets to redeliver partitions from, reported by the work
+    private final Map<TopicPartition, Long> rewinds = new ConcurrentHashMap<>();
+
+    private KafkaFailureHandler(String id, Producer<byte[], byte[]> producer,
+            KafkaParallelDeserializer deserializer, KafkaActivationSpec activationSpec, KafkaConsumerMetrics metrics) {
+
+        this.id = id;
+        this.producer = producer;
+        this.deserializer = deserializer;
+        this.metrics = metrics;
+
+        deadLetterTopic = activationSpec.getDeadLetterTopic();
+        maxRetries = activationSpec.getRetryTopic() == null ? 0 : activationSpec.getMaxRetries();
+        retryDelayMs = activationSpec.getRetryDelayMs();
+
+        for (int attempt = 1; attempt <= maxRetries; attempt++) {
+
+            retryTopics.add(activationSpec.getRetryTopic() + "-" + attempt);
+        }
+    }
+
+    /**
+     * Create the failure handler for an activation, taking over
+     * deserialization from the consumer by switching the given consumer
+     * properties to {@link org.apache.kafka.common.serialization.ByteArrayDeserializer}.
+     *
+     * @return a failure handler for the activation, or null if it has neither
+     *         a retry nor a dead-letter topic
+     * @since 1.1
+     */
+    static KafkaFailureHandler forSpec(String id, KafkaActivationSpec activationSpec, Map<String, Object> properties,
+            KafkaConsumerMetrics metrics) {
+
+        if (activationSpec.getRetryTopic() == null && activationSpec.getDeadLetterTopic() == null) {
+
+            return null;
+        }
+
+        return new KafkaFailureHandler(id, activationSpec.getResourceAdapter().getFailureProducer(),
+                new KafkaParallelDeserializer(properties, null), activationSpec, metrics);
+    }
+
+    /**
+     * @return the retry topic of each attempt, empty if failed records aren't
+     *         retried
+     * @since 1.1
+     */
+    List<String> getRetryTopics() {
+
+        return Collections.unmodifiableList(retryTopics);
+    }
+
+    /**
+     * Deserialize a raw record with the activation's deserializers.
+     *
+     * @throws SerializationException if the record can't be deserialized
+     * @since 1.1
+     */
+    ConsumerRecord<?, ?> deserialize(ConsumerRecord<?, ?> record) {
+
+        return deserializer.deserialize(asBytes(record));
+    }
+
+    /**
+     * Deserialize a raw batch of records with the activation's deserializers.
+     *
+     * @throws SerializationException if any of the records can't be
+     *             deserialized
+     * @since 1.1
+     */
+    ConsumerRecords<?, ?> deserialize(ConsumerRecords<?, ?> records) {
+
+        Map<TopicPartition, List<ConsumerRecord<Object, Object>>> deserialized = new HashMap<>();
+
+        for (TopicPartition partition : records.partitions()) {
+
+            List<ConsumerRecord<Object, Object>> list = new ArrayList<>();
+
+            for (ConsumerRecord<?, ?> record : records.records(partition)) {
+
+                list.add(deserializer.deserialize(asBytes(record)));
+            }
+
+            deserialized.put(partition, list);
+        }
+
+        return new ConsumerRecords<>(deserialized);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ConsumerRecord<byte[], byte[]> asBytes(ConsumerRecord<?, ?> record) {
+
+        return (ConsumerRecord<byte[], byte[]>) record;
+    }
+
+    /**
+     * Publish a record the endpoint failed to process to the retry topic, or
+     * the dead-letter topic once out of retries, waiting for the send.
+     *
+     * @return false if the record couldn't be published and must be
+     *         redelivered
+     * @since 1.1
+     */
+    boolean failed(ConsumerRecord<?, ?> record, Throwable cause) {
+
+        int attempts = getInt(record.headers(), ATTEMPTS_HEADER) + 1;
+        boolean retry = attempts <= maxRetries;
+        String topic = retry ? retryTopics.get(attempts - 1) : deadLetterTopic;
+
+        if (topic == null) {
+
+            LOGGER.log(Level.SEVERE, String.format("KafkaFailureHandler :: %s-%d@%d out of retries after %d attempts,"
+                    + " no dead-letter topic to send it to :: %s", record.topic(), record.partition(), record.offset(),
+                    attempts, id), cause);
+
+            return false;
+        }
+
+        Headers headers = new RecordHeaders();
+
+        for (Header header : record.headers()) {
+
+            if (!header.key().startsWith("kafka-jca-") || header.key().equals(ORIGINAL_TOPIC_HEADER)) {
+
+                headers.add(header);
+            }
+        }
+
+        if (headers.lastHeader(ORIGINAL_TOPIC_HEADER) == null) {
+
+            headers.add(ORIGINAL_TOPIC_HEADER, record.topic().getBytes(StandardCharsets.UTF_8));
+        }
+
+        headers.add(ATTEMPTS_HEADER, String.valueOf(attempts).getBytes(StandardCharsets.UTF_8));
+
+        if (retry) {
+
+            // back off exponentially over the attempts
+            long due = System.currentTimeMillis() + (retryDelayMs << Math.min(attempts - 1, 20));
+
+            headers.add(DUE_HEADER, String.valueOf(due).getBytes(StandardCharsets.UTF_8));
+
+        } else {
+
+            headers.add(EXCEPTION_HEADER, String.valueOf(cause).getBytes(StandardCharsets.UTF_8));
+        }
+
+        try {
+
+            ConsumerRecord<byte[], byte[]> raw = asBytes(record);
+
+            producer.send(new ProducerRecord<>(topic, null, raw.key(), raw.value(), headers)).get();
+
+            metrics.recordFailureRouted(retry);
+
+            LOGGER.fine(String.format("KafkaFailureHandler :: %s-%d@%d sent to %s after %d attempts :: %s",
+                    record.topic(), record.partition(), record.offset(), topic, attempts, id));
+
+            return true;
+
+        } catch (InterruptedException ex) {
+
+            Thread.currentThread().interrupt();
+
+            LOGGER.log(Level.SEVERE, "KafkaFailureHandler :: interrupted sending to " + topic + " :: " + id, ex);
+
+        } catch (ExecutionException | KafkaException ex) {
+
+            LOGGER.log(Level.SEVERE, "KafkaFailureHandler :: unable to send to " + topic + " :: " + id, ex);
+        }
+
+        return false;
+    }
+
+    /**
+     * Report the offsets partitions have to be redelivered from, as records
+     * from them on were neither delivered nor published.
+     *
+     * @since 1.1
+     */
+    void rewind(Map<TopicPartition, Long> offsets) {
+
+        offsets.forEach((partition, offset) -> rewinds.merge(partition, offset, Math::min));
+    }
+
+    /**
+     * @return the offsets reported since the last call
+     * @since 1.1
+     */
+    Map<TopicPartition, Long> drainRewinds() {
+
+        Map<TopicPartition, Long> offsets = new HashMap<>();
+
+        for (TopicPartition partition : rewinds.keySet()) {
+
+            Long offset = rewinds.remove(partition);
+
+            if (offset != null) {
+
+                offsets.put(partition, offset);
+            }
+        }
+
+        return offsets;
+    }
+
+    /**
+     * Seek the given partitions back to be redelivered from the given offsets,
+     * pausing them for retryDelayMs so a failing record isn't retried in a
+     * tight loop.
+     *
+     * @since 1.1
+     */
+    void holdBack(Map<TopicPartition, Long> offsets, Consumer<?, ?> consumer) {
+
+        Set<TopicPartition> assignment = consumer.assignment();
+        long due = System.currentTimeMillis() + retryDelayMs;
+
+        offsets.forEach((partition, offset) -> {
+
+            // reported late by work on a partition since revoked
+            if (!assignment.contains(partition)) {
+
+                return;
+            }
+
+            LOGGER.warning(String.format("KafkaFailureHandler :: redelivering %s from %d in %d ms :: %s", partition,
+                    offset, retryDelayMs, id));
+
+            consumer.seek(partition, offset);
+            consumer.pause(Collections.singleton(partition));
+            delayed.put(partition, due);
+        });
+    }
+
+    /**
+     * Resume the partitions whose next record has become due, called before
+     * each poll.
+     *
+     * @since 1.1
+     */
+    void resumeDue(Consumer<?, ?> consumer) {
+
+        if (delayed.isEmpty()) {
+
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        Set<TopicPartition> due = new HashSet<>();
+
+        for (Iterator<Map.Entry<TopicPartition, Long>> it = delayed.entrySet().iterator(); it.hasNext();) {
+
+            Map.Entry<TopicPartition, Long> entry = it.next();
+
+            if (entry.getValue() <= now) {
+
+                due.add(entry.getKey());
+                it.remove();
+            }
+        }
+
+        if (!due.isEmpty()) {
+
+            consumer.resume(due);
+        }
+    }
+
+    /**
+     * Hold back the records of a poll result which aren't due yet, seeking
+     * their partition back to the first of them and pausing it.
+     *
+     * @return the records to deliver now
+     * @since 1.1
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    ConsumerRecords<?, ?> hold(ConsumerRecords<?, ?> records, Consumer<?, ?> consumer) {
+
+        if (retryTopics.isEmpty() || records.isEmpty()) {
+
+            return records;
+        }
+
+        long now = System.currentTimeMillis();
+        Map<TopicPartition, List<ConsumerRecord<?, ?>>> ready = new HashMap<>();
+        boolean held = false;
+
+        for (TopicPartition partition : records.partitions()) {
+
+            List<ConsumerRecord<?, ?>> list = new ArrayList<>(records.records(partition));
+
+            if (retryTopics.contains(partition.topic())) {
+
+                for (int i = 0; i < list.size(); i++) {
+
+                    long due = getLong(list.get(i).headers(), DUE_HEADER);
+
+                    if (due > now) {
+
+                        consumer.seek(partition, list.get(i).offset());
+                        consumer.pause(Collections.singleton(partition));
+                        delayed.put(partition, due);
+
+                        list = list.subList(0, i);
+                        held = true;
+                        break;
+                    }
+                }
+            }
+
+            if (!list.isEmpty()) {
+
+                ready.put(partition, list);
+            }
+        }
+
+        return held ? new ConsumerRecords(ready) : records;
+    }
+
+    /**
+     * @return the partitions paused until their next record is due
+     * @since 1.1
+     */
+    Set<TopicPartition> getDelayed() {
+
+        return delayed.keySet();
+    }
+
+    /**
+     * Forget the given partitions, once revoked.
+     *
+     * @since 1.1
+     */
+    void revoke(Collection<TopicPartition> partitions) {
+
+        delayed.keySet().removeAll(partitions);
+        rewinds.keySet().removeAll(partitions);
+    }
+
+    /**
+     * @since 1.1
+     */
+    void close() {
+
+        deserializer.close();
+    }
+
+    private static int getInt(Headers headers, String key) {
+
+        return (int) getLong(headers, key);
+    }
+
+    private static long getLong(Headers headers, String key) {
+
+        Header header = headers.lastHeader(key);
+
+        if (header == null || header.value() == null) {
+
+            return 0;
+        }
+
+        try {
+
+            return Long.parseLong(new String(header.value(), StandardCharsets.UTF_8));
+
+        } catch (NumberFormatException ex) {
+
+            return 0;
+        }
+    }
+}
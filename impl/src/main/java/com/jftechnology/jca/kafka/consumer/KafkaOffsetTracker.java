@@ -0,0 +1,166 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.consumer;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * KafkaOffsetTracker - tracks the offsets handed out for delivery per partition
+ * and works out how far each partition can be committed, i.e. up to the
+ * lowest offset which has not yet been delivered. Records may be delivered out
+ * of order across lanes, the committable offset only ever advances over a
+ * contiguous run of delivered records.
+ * <p>
+ * Not thread safe, callers are expected to synchronize.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+class KafkaOffsetTracker {
+
+    private final Map<TopicPartition, TreeSet<Long>> pending = new HashMap<>();
+
+    private final Map<TopicPartition, Long> next = new HashMap<>();
+
+    /**
+     * Start tracking the given records as pending delivery.
+     *
+     * @since 1.1
+     */
+    void track(ConsumerRecords<?, ?> records) {
+
+        for (TopicPartition partition : records.partitions()) {
+
+            TreeSet<Long> offsets = pending.computeIfAbsent(partition, p -> new TreeSet<>());
+
+            for (ConsumerRecord<?, ?> record : records.records(partition)) {
+
+                offsets.add(record.offset());
+                next.merge(partition, record.offset() + 1, Math::max);
+            }
+        }
+    }
+
+    /**
+     * Mark the given records as delivered.
+     *
+     * @return the new committable offset of every partition which has advanced
+     * @since 1.1
+     */
+    Map<TopicPartition, OffsetAndMetadata> complete(ConsumerRecords<?, ?> records) {
+
+        Map<TopicPartition, OffsetAndMetadata> committable = new HashMap<>();
+
+        for (TopicPartition partition : records.partitions()) {
+
+            TreeSet<Long> offsets = pending.get(partition);
+
+            if (offsets == null) {
+
+                // no longer tracked
+                continue;
+            }
+
+            long before = getCommittable(partition, offsets);
+
+            for (ConsumerRecord<?, ?> record : records.records(partition)) {
+
+                offsets.remove(record.offset());
+            }
+
+            long after = getCommittable(partition, offsets);
+
+            if (after > before) {
+
+                committable.put(partition, new OffsetAndMetadata(after));
+            }
+        }
+
+        return committable;
+    }
+
+    /**
+     * Stop tracking the given partitions, e.g. once revoked.
+     *
+     * @since 1.1
+     */
+    void remove(Collection<TopicPartition> partitions) {
+
+        for (TopicPartition partition : partitions) {
+
+            pending.remove(partition);
+            next.remove(partition);
+        }
+    }
+
+    /**
+     * @return the offset the partition can be committed up to, or null if it
+     *         isn't tracked
+     * @since 1.1
+     */
+    Long getCommittable(TopicPartition partition) {
+
+        TreeSet<Long> offsets = pending.get(partition);
+
+        return offsets == null ? null : getCommittable(partition, offsets);
+    }
+
+    /**
+     * @return the number of records of the partition still pending delivery
+     * @since 1.1
+     */
+    int getPending(TopicPartition partition) {
+
+        TreeSet<Long> offsets = pending.get(partition);
+
+        return offsets == null ? 0 : offsets.size();
+    }
+
+    /**
+     * @return the partitions with more than the given number of records
+     *         pending delivery
+     * @since 1.1
+     */
+    Set<TopicPartition> getSaturated(int max) {
+
+        Set<TopicPartition> saturated = new HashSet<>();
+
+        pending.forEach((partition, offsets) -> {
+
+            if (offsets.size() > max) {
+
+                saturated.add(partition);
+            }
+        });
+
+        return saturated;
+    }
+
+    private long getCommittable(TopicPartition partition, TreeSet<Long> offsets) {
+
+        return offsets.isEmpty() ? next.get(partition) : offsets.first();
+    }
+}
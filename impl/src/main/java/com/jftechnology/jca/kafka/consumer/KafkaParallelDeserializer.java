@@ -0,0 +1,261 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.consumer;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.ExtendedDeserializer;
+import org.apache.kafka.common.utils.Utils;
+
+/**
+ * KafkaParallelDeserializer - runs the configured key and value deserializers
+ * over raw poll results on a fork-join pool, so decoding a large batch is
+ * spread across cores rather than done inside poll on the polling thread.
+ * <p>
+ * Deserializers aren't required to be thread safe, so each thread borrows
+ * instances of its own, created as needed and kept for reuse. A record which
+ * can't be deserialized ends its partition's share of the batch, the
+ * partition being sought back to it as the consumer itself would leave it.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+class KafkaParallelDeserializer {
+
+    private static final Logger LOGGER = Logger.getLogger(KafkaParallelDeserializer.class.getName());
+
+    private final Map<String, Object> properties;
+
+    private final ForkJoinPool pool;
+
+    // instances not currently in use by a thread
+    private final Deque<Instances> idle = new ConcurrentLinkedDeque<>();
+
+    private volatile boolean closed;
+
+    /**
+     * Take over deserialization from the consumer - the configured
+     * deserializers are instantiated here and the given consumer properties
+     * switched to {@link ByteArrayDeserializer}.
+     *
+     * @param pool the pool to deserialize poll results on, or null if only
+     *            single records are deserialized
+     * @since 1.1
+     */
+    KafkaParallelDeserializer(Map<String, Object> properties, ForkJoinPool pool) {
+
+        this.properties = new HashMap<>(properties);
+        this.pool = pool;
+
+        // fail on a misconfigured deserializer now rather than on first use
+        idle.push(new Instances());
+
+        properties.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+        properties.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class);
+    }
+
+    private ExtendedDeserializer<?> create(String key, boolean isKey) {
+
+        Object type = properties.get(key);
+        Deserializer<?> deserializer;
+
+        try {
+
+            deserializer = type instanceof Class ? Utils.newInstance(((Class<?>) type).asSubclass(Deserializer.class))
+                    : Utils.newInstance(String.valueOf(type).trim(), Deserializer.class);
+
+        } catch (ClassNotFoundException e) {
+
+            throw new KafkaException("Unable to load " + key + " " + type, e);
+        }
+
+        deserializer.configure(properties, isKey);
+
+        return ExtendedDeserializer.Wrapper.ensureExtended(deserializer);
+    }
+
+    /**
+     * Deserialize a raw poll result, each partition and the records within it
+     * in parallel, preserving record order within a partition. A partition's
+     * records from the first that can't be deserialized on are left out, and
+     * the consumer sought back to that record.
+     *
+     * @since 1.1
+     */
+    ConsumerRecords<Object, Object> deserialize(ConsumerRecords<byte[], byte[]> records, Consumer<?, ?> consumer) {
+
+        Map<TopicPartition, List<Deserialized>> results = pool.submit(() -> records.partitions().parallelStream()
+                .collect(Collectors.toMap(Function.identity(), partition -> deserialize(records, partition))))
+                .join();
+
+        Map<TopicPartition, List<ConsumerRecord<Object, Object>>> deserialized = new HashMap<>();
+
+        results.forEach((partition, list) -> {
+
+            List<ConsumerRecord<Object, Object>> valid = new ArrayList<>(list.size());
+
+            for (int i = 0; i < list.size(); i++) {
+
+                Deserialized result = list.get(i);
+
+                if (result.failure != null) {
+
+                    long offset = records.records(partition).get(i).offset();
+
+                    LOGGER.log(Level.SEVERE, "KafkaParallelDeserializer :: seeking back to undeserializable record :: "
+                            + partition + "@" + offset, result.failure);
+                    consumer.seek(partition, offset);
+
+                    break;
+                }
+
+                valid.add(result.record);
+            }
+
+            if (!valid.isEmpty()) {
+
+                deserialized.put(partition, valid);
+            }
+        });
+
+        return new ConsumerRecords<>(deserialized);
+    }
+
+    private List<Deserialized> deserialize(ConsumerRecords<byte[], byte[]> records, TopicPartition partition) {
+
+        return records.records(partition).parallelStream().map(record -> {
+
+            try {
+
+                return new Deserialized(deserialize(record), null);
+
+            } catch (SerializationException ex) {
+
+                return new Deserialized(null, ex);
+            }
+
+        }).collect(Collectors.toList());
+    }
+
+    /**
+     * Deserialize a single raw record on the calling thread.
+     *
+     * @throws SerializationException if the record can't be deserialized
+     * @since 1.1
+     */
+    ConsumerRecord<Object, Object> deserialize(ConsumerRecord<byte[], byte[]> record) {
+
+        Instances instances = idle.poll();
+
+        if (instances == null) {
+
+            instances = new Instances();
+        }
+
+        try {
+
+            Object key = instances.key.deserialize(record.topic(), record.headers(), record.key());
+            Object value = instances.value.deserialize(record.topic(), record.headers(), record.value());
+
+            // checksum is recomputed on demand when not given
+            return new ConsumerRecord<>(record.topic(), record.partition(), record.offset(), record.timestamp(),
+                    record.timestampType(), null, record.serializedKeySize(), record.serializedValueSize(), key,
+                    value, record.headers());
+
+        } catch (RuntimeException ex) {
+
+            // as reported by the consumer
+            throw new SerializationException("Error deserializing key/value for partition " + record.topic() + "-"
+                    + record.partition() + " at offset " + record.offset(), ex);
+
+        } finally {
+
+            idle.push(instances);
+
+            // returned after close
+            if (closed && idle.remove(instances)) {
+
+                instances.close();
+            }
+        }
+    }
+
+    /**
+     * @since 1.1
+     */
+    void close() {
+
+        closed = true;
+
+        Instances instances;
+
+        while ((instances = idle.poll()) != null) {
+
+            instances.close();
+        }
+    }
+
+    /**
+     * A key and value deserializer for use by one thread at a time.
+     */
+    private class Instances {
+
+        private final ExtendedDeserializer<?> key = create(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, true);
+
+        private final ExtendedDeserializer<?> value = create(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, false);
+
+        void close() {
+
+            key.close();
+            value.close();
+        }
+    }
+
+    /**
+     * The outcome of deserializing one record.
+     */
+    private static class Deserialized {
+
+        private final ConsumerRecord<Object, Object> record;
+
+        private final SerializationException failure;
+
+        Deserialized(ConsumerRecord<Object, Object> record, SerializationException failure) {
+
+            this.record = record;
+            this.failure = failure;
+        }
+    }
+}
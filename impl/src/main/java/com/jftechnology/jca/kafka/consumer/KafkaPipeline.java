@@ -0,0 +1,492 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.consumer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.resource.spi.work.Work;
+import javax.resource.spi.work.WorkAdapter;
+import javax.resource.spi.work.WorkEvent;
+import javax.resource.spi.work.WorkException;
+import javax.resource.spi.work.WorkManager;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * KafkaPipeline - decouples polling from delivery. Poll results are split into
+ * lanes, queued per lane and delivered asynchronously with one work item in
+ * flight per lane so ordering within a lane is preserved, while the polling
+ * thread carries on fetching. Only the polling thread schedules work, a work
+ * item carries on with its lane's queued batches once its own is delivered.
+ * <p>
+ * Lanes are either the topic partitions themselves, or a fixed number of lanes
+ * the records are sharded across by key hash, which keeps per-key ordering
+ * while allowing more parallelism than there are partitions. In both cases a
+ * {@link KafkaOffsetTracker} works out how far each partition has been fully
+ * delivered, those offsets are handed back to the polling thread for
+ * committing. Partitions with more records pending than the configured bound
+ * are reported so they can be paused.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+class KafkaPipeline {
+
+    private static final Logger LOGGER = Logger.getLogger(KafkaPipeline.class.getName());
+
+    private final KafkaEndpointPool endpointPool;
+
+    private final KafkaEndpointInvoker invoker;
+
+    private final KafkaConsumerMetrics metrics;
+
+    private final KafkaFailureHandler failures;
+
+    private final WorkManager workManager;
+
+    private final int maxQueuedRecords;
+
+    private final int keyLanes;
+
+    private final KafkaOffsetTracker tracker = new KafkaOffsetTracker();
+
+    private final Map<Object, Deque<ConsumerRecords<?, ?>>> queued = new HashMap<>();
+
+    private final Map<Object, ConsumerRecords<?, ?>> inFlight = new HashMap<>();
+
+    private Map<TopicPartition, OffsetAndMetadata> completed = new HashMap<>();
+
+    private int completedRecords;
+
+    private boolean closed;
+
+    /**
+     * @param keyLanes the number of lanes to shard records across by key, or
+     *            zero to use one lane per partition
+     * @since 1.1
+     */
+    KafkaPipeline(KafkaEndpointPool endpointPool, KafkaEndpointInvoker invoker, KafkaConsumerMetrics metrics,
+            KafkaFailureHandler failures, WorkManager workManager, int maxQueuedRecords, int keyLanes) {
+
+        this.endpointPool = endpointPool;
+        this.invoker = invoker;
+        this.metrics = metrics;
+        this.failures = failures;
+        this.workManager = workManager;
+        this.maxQueuedRecords = maxQueuedRecords;
+        this.keyLanes = keyLanes;
+    }
+
+    /**
+     * Queue a poll result for delivery.
+     *
+     * @since 1.1
+     */
+    void submit(ConsumerRecords<?, ?> records) {
+
+        synchronized (this) {
+
+            tracker.track(records);
+
+            split(records).forEach((lane, batch) -> queued.computeIfAbsent(lane, l -> new ArrayDeque<>())
+                    .add(batch));
+        }
+
+        dispatch();
+    }
+
+    /**
+     * Start delivery on every lane which has queued records and nothing in
+     * flight, which also retries batches previously rejected by the work
+     * manager.
+     *
+     * @since 1.1
+     */
+    void dispatch() {
+
+        Map<Object, ConsumerRecords<?, ?>> starting = new HashMap<>();
+
+        synchronized (this) {
+
+            for (Object lane : queued.keySet()) {
+
+                ConsumerRecords<?, ?> records = take(lane);
+
+                if (records != null) {
+
+                    starting.put(lane, records);
+                }
+            }
+        }
+
+        starting.forEach(this::schedule);
+    }
+
+    /**
+     * @return the offsets delivered since the last call, ready for committing
+     * @since 1.1
+     */
+    synchronized Map<TopicPartition, OffsetAndMetadata> drainCompleted() {
+
+        Map<TopicPartition, OffsetAndMetadata> offsets = completed;
+
+        completed = new HashMap<>();
+
+        return offsets;
+    }
+
+    /**
+     * @return the number of records delivered since the last call
+     * @since 1.1
+     */
+    synchronized int drainCompletedRecords() {
+
+        int count = completedRecords;
+
+        completedRecords = 0;
+
+        return count;
+    }
+
+    /**
+     * Stop dispatching and wait for the batches in flight to complete. Queued
+     * batches are dropped, they are never committed so will be redelivered
+     * to whichever consumer is next assigned their partitions.
+     *
+     * @return true if nothing is left in flight
+     * @since 1.1
+     */
+    synchronized boolean close(long timeoutMs) throws InterruptedException {
+
+        closed = true;
+        queued.clear();
+
+        long deadline = System.currentTimeMillis() + timeoutMs;
+
+        while (!inFlight.isEmpty()) {
+
+            long remaining = deadline - System.currentTimeMillis();
+
+            if (remaining <= 0) {
+
+                return false;
+            }
+
+            wait(remaining);
+        }
+
+        return true;
+    }
+
+    /**
+     * Drop the queued records of revoked partitions and wait for the batches
+     * in flight holding records of them to complete, so their offsets can be
+     * committed before the partitions are handed over. The partitions are
+     * then no longer tracked, anything delivered late isn't committed.
+     *
+     * @return true if no records of the partitions are left in flight
+     * @since 1.1
+     */
+    synchronized boolean revoke(Collection<TopicPartition> partitions, long timeoutMs) throws InterruptedException {
+
+        drop(partitions);
+
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        boolean drained = true;
+
+        while (inFlight.values().stream().anyMatch(batch -> !Collections.disjoint(batch.partitions(), partitions))) {
+
+            long remaining = deadline - System.currentTimeMillis();
+
+            if (remaining <= 0) {
+
+                drained = false;
+                break;
+            }
+
+            wait(remaining);
+        }
+
+        tracker.remove(partitions);
+
+        return drained;
+    }
+
+    /**
+     * Drop the queued records of partitions which are to be redelivered from
+     * the given offsets, as they will be polled again, and stop tracking them
+     * so nothing delivered from them is committed past the offsets.
+     *
+     * @return the offsets to seek the partitions back to, lowered to the first
+     *         of their records still in flight
+     * @since 1.1
+     */
+    synchronized Map<TopicPartition, Long> rewind(Map<TopicPartition, Long> offsets) {
+
+        Map<TopicPartition, Long> seeks = new HashMap<>();
+
+        offsets.forEach((partition, offset) -> {
+
+            Long committable = tracker.getCommittable(partition);
+            long seek = committable == null ? offset : Math.min(offset, committable);
+
+            seeks.put(partition, seek);
+
+            // completed since last drained
+            completed.computeIfPresent(partition, (p, next) -> next.offset() > seek ? new OffsetAndMetadata(seek)
+                    : next);
+        });
+
+        drop(seeks.keySet());
+        tracker.remove(seeks.keySet());
+
+        return seeks;
+    }
+
+    /**
+     * @return the partitions with more than the configured number of records
+     *         queued or in flight
+     * @since 1.1
+     */
+    synchronized Set<TopicPartition> getSaturatedPartitions() {
+
+        return tracker.getSaturated(maxQueuedRecords);
+    }
+
+    private void drop(Collection<TopicPartition> partitions) {
+
+        for (Deque<ConsumerRecords<?, ?>> queue : queued.values()) {
+
+            for (int i = queue.size(); i > 0; i--) {
+
+                ConsumerRecords<?, ?> batch = without(queue.poll(), partitions);
+
+                if (!batch.isEmpty()) {
+
+                    queue.add(batch);
+                }
+            }
+        }
+    }
+
+    private Map<Object, ConsumerRecords<?, ?>> split(ConsumerRecords<?, ?> records) {
+
+        Map<Object, ConsumerRecords<?, ?>> lanes = new HashMap<>();
+
+        if (keyLanes <= 0) {
+
+            for (TopicPartition partition : records.partitions()) {
+
+                lanes.put(partition, KafkaTimerTask.slice(records, partition));
+            }
+
+            return lanes;
+        }
+
+        Map<Integer, Map<TopicPartition, List<ConsumerRecord<?, ?>>>> shards = new HashMap<>();
+
+        for (TopicPartition partition : records.partitions()) {
+
+            for (ConsumerRecord<?, ?> record : records.records(partition)) {
+
+                // records without a key keep their partition ordering, raw
+                // keys are fetched for a failure handler
+                Object key = record.key();
+                int hash = key == null ? partition.hashCode()
+                        : key instanceof byte[] ? Arrays.hashCode((byte[]) key) : key.hashCode();
+
+                shards.computeIfAbsent((hash & Integer.MAX_VALUE) % keyLanes, l -> new HashMap<>())
+                        .computeIfAbsent(partition, p -> new ArrayList<>()).add(record);
+            }
+        }
+
+        shards.forEach((lane, shard) -> lanes.put(lane, toConsumerRecords(shard)));
+
+        return lanes;
+    }
+
+    private static ConsumerRecords<?, ?> without(ConsumerRecords<?, ?> records,
+            Collection<TopicPartition> partitions) {
+
+        Map<TopicPartition, List<ConsumerRecord<?, ?>>> remaining = new HashMap<>();
+
+        for (TopicPartition partition : records.partitions()) {
+
+            if (!partitions.contains(partition)) {
+
+                remaining.put(partition, new ArrayList<>(records.records(partition)));
+            }
+        }
+
+        return toConsumerRecords(remaining);
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static ConsumerRecords<?, ?> toConsumerRecords(Map<TopicPartition, List<ConsumerRecord<?, ?>>> shard) {
+
+        return new ConsumerRecords(shard);
+    }
+
+    /**
+     * Take the lane's next batch and mark it in flight, unless the lane
+     * already has one in flight.
+     *
+     * @return the batch to schedule, or null if there is none
+     */
+    private ConsumerRecords<?, ?> take(Object lane) {
+
+        Deque<ConsumerRecords<?, ?>> queue = queued.get(lane);
+
+        if (closed || inFlight.containsKey(lane) || queue == null || queue.isEmpty()) {
+
+            return null;
+        }
+
+        ConsumerRecords<?, ?> records = queue.poll();
+
+        inFlight.put(lane, records);
+
+        return records;
+    }
+
+    /**
+     * Schedule delivery of a batch taken from its lane, called without holding
+     * the pipeline's monitor as a work manager with a bounded queue may block
+     * until a worker, which needs the monitor to complete its batch, is free.
+     */
+    private void schedule(Object lane, ConsumerRecords<?, ?> records) {
+
+        LaneWork work = new LaneWork(lane, records);
+
+        try {
+
+            workManager.scheduleWork(work, WorkManager.INDEFINITE, null, work);
+
+        } catch (WorkException ex) {
+
+            LOGGER.log(Level.SEVERE, "Work manager failure", ex);
+
+            rejected(lane, records);
+        }
+    }
+
+    /**
+     * Mark a batch as delivered.
+     *
+     * @param next whether to take the lane's next batch
+     * @return the lane's next batch, now in flight, or null
+     */
+    private synchronized ConsumerRecords<?, ?> completed(Object lane, ConsumerRecords<?, ?> records, boolean next) {
+
+        if (!inFlight.remove(lane, records)) {
+
+            return null;
+        }
+
+        completed.putAll(tracker.complete(records));
+        completedRecords += records.count();
+
+        notifyAll();
+
+        return next ? take(lane) : null;
+    }
+
+    private synchronized void rejected(Object lane, ConsumerRecords<?, ?> records) {
+
+        // keep the batch at the head of the queue, it is retried by the
+        // polling thread on its next dispatch
+        if (inFlight.remove(lane, records) && !closed) {
+
+            queued.get(lane).addFirst(records);
+        }
+
+        notifyAll();
+    }
+
+    /**
+     * Work delivering a lane's batches in turn for as long as it has more
+     * queued, rather than scheduling further work from a worker thread which
+     * could block on a full work manager queue only workers drain. Also the
+     * listener tracking the batch in flight.
+     */
+    private class LaneWork extends WorkAdapter implements Work {
+
+        private final Object lane;
+
+        private volatile ConsumerRecords<?, ?> records;
+
+        private volatile boolean released;
+
+        LaneWork(Object lane, ConsumerRecords<?, ?> records) {
+
+            this.lane = lane;
+            this.records = records;
+        }
+
+        @Override
+        public void run() {
+
+            while (records != null) {
+
+                new KafkaWork(endpointPool, records, invoker, metrics, failures).run();
+
+                records = completed(lane, records, !released);
+            }
+        }
+
+        @Override
+        public void release() {
+
+            // the polling thread dispatches whatever is left
+            released = true;
+        }
+
+        @Override
+        public void workRejected(WorkEvent event) {
+
+            LOGGER.log(Level.SEVERE, "Work rejected", event.getException());
+
+            rejected(lane, records);
+        }
+
+        @Override
+        public void workCompleted(WorkEvent event) {
+
+            ConsumerRecords<?, ?> current = records;
+
+            // the work ended abnormally, leave the rest of the lane to the
+            // polling thread
+            if (current != null) {
+
+                completed(lane, current, false);
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.consumer;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.resource.spi.work.Work;
+
+/**
+ * KafkaPollWork - drives a {@link KafkaTimerTask} in a tight poll / deliver /
+ * commit loop on a single long-lived work manager thread until the task is
+ * cancelled.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+class KafkaPollWork implements Work {
+
+    private static final Logger LOGGER = Logger.getLogger(KafkaPollWork.class.getName());
+
+    private final KafkaTimerTask task;
+
+    private final long initialPollDelay;
+
+    private final long failureBackoff;
+
+    /**
+     * @since 1.1
+     */
+    KafkaPollWork(KafkaTimerTask task, long initialPollDelay, long failureBackoff) {
+
+        this.task = task;
+        this.initialPollDelay = initialPollDelay;
+        this.failureBackoff = failureBackoff;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public void run() {
+
+        LOGGER.info("KafkaPollWork :: start :: " + task.getId());
+
+        try {
+
+            Thread.sleep(initialPollDelay);
+
+            while (!task.isCancelled()) {
+
+                try {
+
+                    // only non zero with an adaptive poll interval
+                    long delay = task.getPollDelay();
+
+                    if (delay > 0) {
+
+                        Thread.sleep(delay);
+                    }
+
+                    task.pollOnce();
+
+                } catch (RuntimeException ex) {
+
+                    // keep the loop alive, but don't spin on a persistent
+                    // failure
+                    LOGGER.log(Level.SEVERE, "Poll failure :: " + task.getId(), ex);
+                    Thread.sleep(failureBackoff);
+                }
+            }
+
+        } catch (InterruptedException ex) {
+
+            Thread.currentThread().interrupt();
+        }
+
+        LOGGER.info("KafkaPollWork :: stop :: " + task.getId());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public void release() {
+
+        LOGGER.fine("KafkaPollWork :: release");
+
+        task.cancel();
+    }
+}
@@ -20,8 +20,10 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Timer;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Logger;
 
 import javax.resource.ResourceException;
@@ -35,7 +37,10 @@ import javax.resource.spi.endpoint.MessageEndpointFactory;
 import javax.transaction.xa.XAResource;
 
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 
 /**
  * @author stephen.flynn@jftechnology.com
@@ -53,7 +58,10 @@ public class KafkaResourceAdapter implements ResourceAdapter, Serializable {
 
     private final UUID uuid = UUID.randomUUID();
 
-    private final Map<MessageEndpointFactory, List<KafkaTimerTask>> registeredFactories = new ConcurrentHashMap<>();
+    private final Map<MessageEndpointFactory, KafkaEndpointActivation> registeredFactories = new ConcurrentHashMap<>();
+
+    // keyed by the consumer properties of the activations sharing them
+    private final Map<Map<String, Object>, KafkaSharedConsumer> sharedConsumers = new HashMap<>();
 
     private BootstrapContext context;
 
@@ -90,6 +98,25 @@ public class KafkaResourceAdapter implements ResourceAdapter, Serializable {
     @ConfigProperty(type = Integer.class, defaultValue = "1000", description = ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG)
     private Integer fetchMaxWaitMs;
 
+    @ConfigProperty(
+            type = Integer.class,
+            description = "Parallelism of the pool used for parallel deserialization, defaults to the processor count")
+    private Integer deserializationParallelism;
+
+    @ConfigProperty(
+            type = Boolean.class,
+            defaultValue = "false",
+            description = "Share one consumer between activations with the same consumer properties")
+    private Boolean shareConsumers = false;
+
+    private transient ForkJoinPool deserializationPool;
+
+    private transient Producer<byte[], byte[]> failureProducer;
+
+    private transient KafkaExecutorWorkManager virtualThreadWorkManager;
+
+    private transient boolean virtualThreadsUnsupported;
+
     /**
      * {@inheritDoc}
      *
@@ -113,6 +140,43 @@ public class KafkaResourceAdapter implements ResourceAdapter, Serializable {
     public void stop() {
 
         LOGGER.info(String.format("Adapter %s stopping...", uuid));
+
+        // wake up the consumers of all activations the container didn't
+        // deactivate first, so they wind down together while each is stopped
+        List<KafkaEndpointActivation> stopping = new ArrayList<>(registeredFactories.values());
+
+        registeredFactories.clear();
+
+        for (KafkaEndpointActivation activation : stopping) {
+
+            activation.cancel();
+        }
+
+        for (KafkaEndpointActivation activation : stopping) {
+
+            activation.stop();
+        }
+
+        synchronized (this) {
+
+            if (deserializationPool != null) {
+
+                deserializationPool.shutdown();
+                deserializationPool = null;
+            }
+
+            if (failureProducer != null) {
+
+                failureProducer.close();
+                failureProducer = null;
+            }
+
+            if (virtualThreadWorkManager != null) {
+
+                virtualThreadWorkManager.shutdown();
+                virtualThreadWorkManager = null;
+            }
+        }
     }
 
     /**
@@ -131,28 +195,12 @@ public class KafkaResourceAdapter implements ResourceAdapter, Serializable {
 
         if (spec instanceof KafkaActivationSpec) {
 
-            try {
-
-                KafkaActivationSpec kafkaActivationSpec = (KafkaActivationSpec) spec;
-
-                List<KafkaTimerTask> tasks = new ArrayList<>();
+            KafkaEndpointActivation activation = new KafkaEndpointActivation(endpointFactory,
+                    (KafkaActivationSpec) spec, context);
 
-                for (int i = 0; i < kafkaActivationSpec.getPoolSize(); i++) {
+            activation.start();
 
-                    KafkaTimerTask task = new KafkaTimerTask(endpointFactory, kafkaActivationSpec, context);
-
-                    tasks.add(task);
-
-                    context.createTimer().schedule(task, kafkaActivationSpec.getInitialPollDelay(),
-                            kafkaActivationSpec.getPollInterval());
-                }
-
-                registeredFactories.put(endpointFactory, tasks);
-
-            } catch (NoSuchMethodException | SecurityException e) {
-
-                throw new ResourceException(e);
-            }
+            registeredFactories.put(endpointFactory, activation);
 
         } else {
 
@@ -174,11 +222,11 @@ public class KafkaResourceAdapter implements ResourceAdapter, Serializable {
         LOGGER.info("KafkaResourceAdapter :: endpoint deactivation :: " + spec);
 
       
-        List<KafkaTimerTask> tasks = registeredFactories.remove(endpointFactory);
+        KafkaEndpointActivation activation = registeredFactories.remove(endpointFactory);
 
-        for (KafkaTimerTask task : tasks) {
+        if (activation != null) {
 
-            task.cancel();
+            activation.stop();
         }
     }
 
@@ -228,6 +276,128 @@ public class KafkaResourceAdapter implements ResourceAdapter, Serializable {
         return properties;
     }
 
+    /**
+     * @return the fork-join pool shared by consumers with parallel
+     *         deserialization, created on first use
+     * @since 1.1
+     */
+    synchronized ForkJoinPool getDeserializationPool() {
+
+        if (deserializationPool == null) {
+
+            deserializationPool = new ForkJoinPool(deserializationParallelism == null
+                    ? Runtime.getRuntime().availableProcessors() : deserializationParallelism);
+        }
+
+        return deserializationPool;
+    }
+
+    /**
+     * @return the producer shared by consumers for sending failed records to
+     *         retry and dead-letter topics as the raw bytes consumed, created
+     *         on first use
+     * @since 1.1
+     */
+    synchronized Producer<byte[], byte[]> getFailureProducer() {
+
+        if (failureProducer == null) {
+
+            Map<String, Object> properties = getProducerProperties();
+
+            properties.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+            properties.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+
+            // failed records must not be lost
+            properties.put(ProducerConfig.ACKS_CONFIG, "all");
+            properties.put(ProducerConfig.CLIENT_ID_CONFIG, "failures-" + uuid);
+
+            failureProducer = new KafkaProducer<>(properties);
+        }
+
+        return failureProducer;
+    }
+
+    /**
+     * @return the work manager shared by consumers delivering on virtual
+     *         threads, created on first use, or null if the JDK doesn't
+     *         support them
+     * @since 1.1
+     */
+    synchronized KafkaExecutorWorkManager getVirtualThreadWorkManager() {
+
+        if (virtualThreadWorkManager == null && !virtualThreadsUnsupported) {
+
+            virtualThreadWorkManager = KafkaExecutorWorkManager.forVirtualThreads();
+            virtualThreadsUnsupported = virtualThreadWorkManager == null;
+        }
+
+        return virtualThreadWorkManager;
+    }
+
+    /**
+     * Join the consumer shared by activations with the same consumer
+     * properties, creating and starting it for the first.
+     *
+     * @return the shared consumer, or null if it already subscribes to one of
+     *         the activation's topics
+     * @since 1.1
+     */
+    synchronized KafkaSharedConsumer joinSharedConsumer(KafkaActivationSpec spec, KafkaSharedConsumer.Route route)
+            throws ResourceException {
+
+        Map<String, Object> key = KafkaSharedConsumer.getSharingKey(spec);
+        KafkaSharedConsumer shared = sharedConsumers.get(key);
+
+        // one closed by its last activation leaving is replaced
+        if (shared != null && !shared.isClosed()) {
+
+            return shared.add(route) ? shared : null;
+        }
+
+        shared = new KafkaSharedConsumer(spec, context.getWorkManager());
+
+        Timer timer;
+
+        try {
+
+            timer = context.createTimer();
+
+        } catch (ResourceException e) {
+
+            shared.close(0);
+
+            throw e;
+        }
+
+        shared.add(route);
+        shared.start(timer);
+
+        sharedConsumers.put(key, shared);
+
+        LOGGER.info(String.format("Adapter %s sharing consumer %s", uuid, shared.getId()));
+
+        return shared;
+    }
+
+    /**
+     * Leave a shared consumer, closing it within the given timeout if it was
+     * the last activation sharing it. Waits for the consumer's poll cycle
+     * without holding the adapter's lock, so activations sharing different
+     * consumers stop in parallel.
+     *
+     * @since 1.1
+     */
+    void leaveSharedConsumer(KafkaSharedConsumer shared, KafkaSharedConsumer.Route route, long timeoutMs) {
+
+        if (shared.remove(route, timeoutMs)) {
+
+            synchronized (this) {
+
+                sharedConsumers.values().remove(shared);
+            }
+        }
+    }
+
     /**
      * Get the bootstrapServers property.
      *
@@ -360,6 +530,53 @@ public class KafkaResourceAdapter implements ResourceAdapter, Serializable {
         this.fetchMaxWaitMs = fetchMaxWaitMs;
     }
 
+    /**
+     * Get the deserializationParallelism property.
+     *
+     * @return Returns the deserializationParallelism.
+     * @since 1.1
+     */
+    public Integer getDeserializationParallelism() {
+
+        return deserializationParallelism;
+    }
+
+    /**
+     * Set the deserializationParallelism property.
+     *
+     * @param deserializationParallelism The deserializationParallelism to set.
+     * @since 1.1
+     */
+    public void setDeserializationParallelism(Integer deserializationParallelism) {
+
+        this.deserializationParallelism = deserializationParallelism;
+    }
+
+    /**
+     * Get the shareConsumers property. When true activations with the same
+     * consumer properties, subscribing to distinct topic lists without the
+     * features needing a consumer of their own, share a single consumer with
+     * records routed to each activation by topic.
+     *
+     * @return Returns the shareConsumers.
+     * @since 1.1
+     */
+    public Boolean getShareConsumers() {
+
+        return shareConsumers;
+    }
+
+    /**
+     * Set the shareConsumers property.
+     *
+     * @param shareConsumers The shareConsumers to set.
+     * @since 1.1
+     */
+    public void setShareConsumers(Boolean shareConsumers) {
+
+        this.shareConsumers = shareConsumers;
+    }
+
     /**
      * REVIEW - Returns a hash code value for the object.
      * 
@@ -0,0 +1,596 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.consumer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.resource.ResourceException;
+import javax.resource.spi.endpoint.MessageEndpointFactory;
+import javax.resource.spi.work.WorkException;
+import javax.resource.spi.work.WorkManager;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+
+/**
+ * KafkaSharedConsumer - a single consumer polling on behalf of several
+ * endpoint activations with the same consumer properties, i.e. the same
+ * bootstrap servers and group amongst others, subscribed to the union of
+ * their topics. Each poll result is split by topic, delivered to the
+ * activations' endpoints concurrently and committed once all of them have
+ * completed, so many low volume endpoints don't each hold their own
+ * connections, fetch buffers and metadata.
+ * <p>
+ * Only plain activations subscribing to a topic list are shared, see
+ * {@link #isShareable(KafkaActivationSpec)}, with no topic subscribed by more
+ * than one of them. Activations only share a consumer when their poll
+ * settings match as well as their consumer properties, see
+ * {@link #getSharingKey(KafkaActivationSpec)}, the consumer polling on a timer
+ * and committing after every poll. It is closed once the last activation
+ * leaves.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+class KafkaSharedConsumer extends TimerTask {
+
+    private static final Logger LOGGER = Logger.getLogger(KafkaSharedConsumer.class.getName());
+
+    private static final long LAG_INTERVAL_MS = 10000;
+
+    private final String id;
+
+    private final KafkaActivationSpec activationSpec;
+
+    private final WorkManager workManager;
+
+    private final Consumer<?, ?> consumer;
+
+    // held by the polling thread for each run, and to change the routes
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Map<String, Route> routes = new HashMap<>();
+
+    // the next offset of every partition delivered so far
+    private final Map<TopicPartition, OffsetAndMetadata> delivered = new HashMap<>();
+
+    private Timer timer;
+
+    private long nextLagUpdate;
+
+    private volatile boolean closed;
+
+    /**
+     * @since 1.1
+     */
+    KafkaSharedConsumer(KafkaActivationSpec activationSpec, WorkManager workManager) {
+
+        this(activationSpec, workManager, KafkaConsumer::new);
+    }
+
+    /**
+     * Create a shared consumer built from the activation spec's consumer
+     * properties by the given factory, e.g. a mock consumer.
+     *
+     * @since 1.1
+     */
+    KafkaSharedConsumer(KafkaActivationSpec activationSpec, WorkManager workManager,
+            Function<Map<String, Object>, Consumer<?, ?>> consumerFactory) {
+
+        this.activationSpec = activationSpec;
+        this.workManager = workManager;
+
+        id = String.format("shared-%s", UUID.randomUUID());
+
+        Map<String, Object> properties = activationSpec.getConsumerProperties();
+
+        properties.put(ConsumerConfig.CLIENT_ID_CONFIG, id);
+
+        consumer = consumerFactory.apply(properties);
+    }
+
+    /**
+     * @return true if the activation can share a consumer, it subscribes to
+     *         a topic list and uses none of the features needing a consumer
+     *         of its own
+     * @since 1.1
+     */
+    static boolean isShareable(KafkaActivationSpec activationSpec) {
+
+        return (activationSpec.getTopicPattern() == null || activationSpec.getTopicPattern().trim().isEmpty())
+                && !activationSpec.getTopicList().isEmpty()
+                && !Boolean.TRUE.equals(activationSpec.getPipelined())
+                && !Boolean.TRUE.equals(activationSpec.getPollLoop())
+                && !Boolean.TRUE.equals(activationSpec.getPartitionedDelivery())
+                && !Boolean.TRUE.equals(activationSpec.getAdaptivePollInterval())
+                && (activationSpec.getKeyOrderedLanes() == null || activationSpec.getKeyOrderedLanes() == 0)
+                && !Boolean.TRUE.equals(activationSpec.getParallelDeserialization())
+                && !Boolean.TRUE.equals(activationSpec.getVirtualThreadDelivery())
+                && !Boolean.TRUE.equals(activationSpec.getAutoScale())
+                && activationSpec.getRetryTopic() == null && activationSpec.getDeadLetterTopic() == null
+                && activationSpec.getCommitIntervalRecords() == null && activationSpec.getCommitIntervalMs() == null;
+    }
+
+    /**
+     * @return the consumer properties, which include the poll timeout, and
+     *         the poll settings an activation has to match to share this
+     *         consumer
+     * @since 1.1
+     */
+    static Map<String, Object> getSharingKey(KafkaActivationSpec activationSpec) {
+
+        Map<String, Object> properties = activationSpec.getConsumerProperties();
+
+        properties.remove(ConsumerConfig.CLIENT_ID_CONFIG);
+
+        // not consumer properties, prefixed so they can't clash with any
+        properties.put("kafka-jca.pollInterval", activationSpec.getPollInterval());
+        properties.put("kafka-jca.initialPollDelay", activationSpec.getInitialPollDelay());
+        properties.put("kafka-jca.shutdownTimeoutMs", activationSpec.getShutdownTimeoutMs());
+
+        return properties;
+    }
+
+    /**
+     * Start polling on a timer from the given bootstrap context.
+     *
+     * @since 1.1
+     */
+    void start(Timer timer) {
+
+        this.timer = timer;
+
+        timer.schedule(this, activationSpec.getInitialPollDelay(), activationSpec.getPollInterval());
+    }
+
+    /**
+     * Add an activation's route, subscribing to its topics once the current
+     * poll cycle has completed.
+     *
+     * @return false if the consumer is closed or already subscribed to one
+     *         of the topics
+     * @since 1.1
+     */
+    boolean add(Route route) {
+
+        lock.lock();
+
+        try {
+
+            if (closed || route.topics.stream().anyMatch(routes::containsKey)) {
+
+                return false;
+            }
+
+            route.topics.forEach(topic -> routes.put(topic, route));
+            route.metrics.addConsumer(id, consumer, route.topics);
+
+            subscribe();
+
+            return true;
+
+        } finally {
+
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove an activation's route once the current poll cycle has completed,
+     * waking up a poll waiting for records, committing everything delivered,
+     * and close the consumer within the given timeout if it was the last.
+     *
+     * @return true if the consumer was closed
+     * @since 1.1
+     */
+    boolean remove(Route route, long timeoutMs) {
+
+        consumer.wakeup();
+
+        lock.lock();
+
+        try {
+
+            routes.values().removeIf(r -> r == route);
+            route.metrics.removeConsumer(id);
+
+            try {
+
+                commitSync();
+
+            } catch (KafkaException ex) {
+
+                LOGGER.log(Level.WARNING, "KafkaSharedConsumer :: commit on remove failed :: " + id, ex);
+            }
+
+            delivered.keySet().removeIf(partition -> route.topics.contains(partition.topic()));
+
+            if (!routes.isEmpty()) {
+
+                subscribe();
+
+                return false;
+            }
+
+            close(timeoutMs);
+
+            return true;
+
+        } finally {
+
+            lock.unlock();
+        }
+    }
+
+    private void subscribe() {
+
+        consumer.subscribe(new ArrayList<>(routes.keySet()), new RebalanceListener());
+
+        LOGGER.info(String.format("KafkaSharedConsumer :: subscribed to topic list %s :: %s", routes.keySet(), id));
+    }
+
+    /**
+     * Stop polling and close the consumer within the given timeout.
+     *
+     * @since 1.1
+     */
+    void close(long timeoutMs) {
+
+        LOGGER.info("KafkaSharedConsumer :: close :: " + id);
+
+        closed = true;
+        cancel();
+
+        if (timer != null) {
+
+            timer.cancel();
+        }
+
+        try {
+
+            consumer.close(timeoutMs, TimeUnit.MILLISECONDS);
+
+        } catch (KafkaException ex) {
+
+            LOGGER.log(Level.WARNING, "KafkaSharedConsumer :: close failed :: " + id, ex);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public void run() {
+
+        LOGGER.fine("KafkaSharedConsumer :: run :: " + id);
+
+        if (closed) {
+
+            return;
+        }
+
+        lock.lock();
+
+        try {
+
+            if (closed) {
+
+                return;
+            }
+
+            ConsumerRecords<?, ?> records = consumer.poll(activationSpec.getFetchMaxWaitMs());
+
+            if (!records.isEmpty()) {
+
+                deliver(records);
+            }
+
+            updateLag();
+
+        } catch (WakeupException ex) {
+
+            // woken up by a route leaving
+            LOGGER.fine("KafkaSharedConsumer :: woken up :: " + id);
+
+        } catch (RuntimeException ex) {
+
+            // an exception escaping would cancel the timer
+            LOGGER.log(Level.SEVERE, "Poll failure :: " + id, ex);
+
+        } finally {
+
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deliver each activation's share of the poll result concurrently, wait
+     * for all of them and commit.
+     */
+    private void deliver(ConsumerRecords<?, ?> records) {
+
+        Map<Route, Map<TopicPartition, List<ConsumerRecord<?, ?>>>> split = new HashMap<>();
+
+        for (TopicPartition partition : records.partitions()) {
+
+            Route route = routes.get(partition.topic());
+
+            // left over from a topic just unsubscribed, not committed
+            if (route != null) {
+
+                split.computeIfAbsent(route, r -> new HashMap<>()).put(partition,
+                        new ArrayList<>(records.records(partition)));
+            }
+        }
+
+        if (split.isEmpty()) {
+
+            return;
+        }
+
+        KafkaWorkLatch latch = new KafkaWorkLatch(split.size());
+        Map<Route, KafkaWork> works = new HashMap<>();
+
+        for (Map.Entry<Route, Map<TopicPartition, List<ConsumerRecord<?, ?>>>> entry : split.entrySet()) {
+
+            Route route = entry.getKey();
+            ConsumerRecords<?, ?> share = toConsumerRecords(entry.getValue());
+
+            route.metrics.recordPoll(share.count());
+
+            KafkaWork work = new KafkaWork(route.endpointPool, share, route.invoker, route.metrics, null);
+
+            works.put(route, work);
+
+            try {
+
+                workManager.scheduleWork(work, WorkManager.INDEFINITE, null, latch);
+
+            } catch (WorkException ex) {
+
+                // don't leave already scheduled deliveries running behind
+                // the next poll
+                latch.rejected(work, ex);
+                latch.skip(split.size() - works.size());
+                break;
+            }
+        }
+
+        try {
+
+            latch.await();
+
+        } catch (WorkException ex) {
+
+            LOGGER.log(Level.SEVERE, "Work manager failure", ex);
+
+            // nothing is committed, and the routes not delivered to are
+            // polled again rather than committed past by the next poll
+            split.forEach((route, share) -> {
+
+                KafkaWork work = works.get(route);
+
+                if (work == null || latch.isFailed(work)) {
+
+                    share.forEach((partition, partitionRecords) -> consumer.seek(partition,
+                            partitionRecords.get(0).offset()));
+                }
+            });
+
+            return;
+        }
+
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+
+        split.values().forEach(share -> offsets.putAll(KafkaTimerTask.nextOffsets(toConsumerRecords(share))));
+        delivered.putAll(offsets);
+
+        long start = System.nanoTime();
+        Set<Route> committing = split.keySet();
+
+        consumer.commitAsync(offsets,
+                (committed, ex) -> committing.forEach(r -> r.metrics.recordCommit(System.nanoTime() - start, ex)));
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static ConsumerRecords<?, ?> toConsumerRecords(Map<TopicPartition, List<ConsumerRecord<?, ?>>> records) {
+
+        return new ConsumerRecords(records);
+    }
+
+    /**
+     * Commit everything delivered synchronously.
+     */
+    private void commitSync() {
+
+        if (delivered.isEmpty()) {
+
+            return;
+        }
+
+        try {
+
+            consumer.commitSync(delivered);
+
+        } catch (WakeupException ex) {
+
+            // left pending by a wakeup which didn't interrupt a poll
+            consumer.commitSync(delivered);
+        }
+    }
+
+    /**
+     * Refresh each activation's partition lag metrics, at most every
+     * LAG_INTERVAL_MS.
+     */
+    private void updateLag() {
+
+        long now = System.currentTimeMillis();
+
+        if (now < nextLagUpdate) {
+
+            return;
+        }
+
+        nextLagUpdate = now + LAG_INTERVAL_MS;
+
+        try {
+
+            Map<Route, Map<TopicPartition, Long>> lag = new HashMap<>();
+
+            for (Map.Entry<TopicPartition, Long> end : consumer.endOffsets(consumer.assignment()).entrySet()) {
+
+                Route route = routes.get(end.getKey().topic());
+
+                if (route != null) {
+
+                    lag.computeIfAbsent(route, r -> new HashMap<>()).put(end.getKey(),
+                            Math.max(0, end.getValue() - consumer.position(end.getKey())));
+                }
+            }
+
+            for (Route route : new HashSet<>(routes.values())) {
+
+                route.metrics.updateLag(id, lag.getOrDefault(route, new HashMap<>()));
+            }
+
+        } catch (KafkaException ex) {
+
+            LOGGER.log(Level.FINE, "KafkaSharedConsumer :: unable to update lag :: " + id, ex);
+        }
+    }
+
+    /**
+     * @since 1.1
+     */
+    String getId() {
+
+        return id;
+    }
+
+    /**
+     * @return true once the last activation has left and the consumer closed
+     * @since 1.1
+     */
+    boolean isClosed() {
+
+        return closed;
+    }
+
+    /**
+     * Commits everything delivered before partitions are handed over, as
+     * {@link KafkaTimerTask} does.
+     */
+    private class RebalanceListener implements ConsumerRebalanceListener {
+
+        @Override
+        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+
+            LOGGER.info(String.format("KafkaSharedConsumer :: partitions revoked %s :: %s", partitions, id));
+
+            try {
+
+                commitSync();
+
+            } catch (KafkaException ex) {
+
+                LOGGER.log(Level.WARNING, "KafkaSharedConsumer :: commit on revoke failed :: " + id, ex);
+            }
+
+            delivered.keySet().removeAll(partitions);
+        }
+
+        @Override
+        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+
+            LOGGER.info(String.format("KafkaSharedConsumer :: partitions assigned %s :: %s", partitions, id));
+
+            nextLagUpdate = 0;
+        }
+    }
+
+    /**
+     * An activation's share of the consumer - the topics it subscribes to and
+     * where their records are delivered.
+     */
+    static class Route {
+
+        private final List<String> topics;
+
+        private final KafkaEndpointPool endpointPool;
+
+        private final KafkaEndpointInvoker invoker;
+
+        private final KafkaConsumerMetrics metrics;
+
+        /**
+         * @since 1.1
+         */
+        Route(MessageEndpointFactory endpointFactory, KafkaActivationSpec activationSpec,
+                KafkaConsumerMetrics metrics) throws ResourceException {
+
+            this.metrics = metrics;
+
+            topics = activationSpec.getTopicList();
+
+            try {
+
+                invoker = KafkaEndpointInvoker.forEndpoint(endpointFactory.getEndpointClass());
+
+            } catch (NoSuchMethodException | SecurityException e) {
+
+                throw new ResourceException(e);
+            }
+
+            endpointPool = new KafkaEndpointPool(endpointFactory, activationSpec.getEndpointPoolSize() == null ? 1
+                    : activationSpec.getEndpointPoolSize());
+        }
+
+        /**
+         * Release the idle endpoints.
+         *
+         * @since 1.1
+         */
+        void close() {
+
+            endpointPool.close();
+        }
+    }
+}
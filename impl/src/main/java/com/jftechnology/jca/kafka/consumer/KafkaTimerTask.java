@@ -15,21 +15,39 @@
  */
 package com.jftechnology.jca.kafka.consumer;
 
-import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TimerTask;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import javax.resource.spi.BootstrapContext;
 import javax.resource.spi.endpoint.MessageEndpointFactory;
 import javax.resource.spi.work.WorkException;
+import javax.resource.spi.work.WorkManager;
 
+import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.TopicPartition;
 
 /**
  * @author stephen.flynn@jftechnology.com
@@ -39,52 +57,165 @@ class KafkaTimerTask extends TimerTask {
 
     private static final Logger LOGGER = Logger.getLogger(KafkaTimerTask.class.getName());
 
+    private static final long LAG_INTERVAL_MS = 10000;
+
     private final String id;
 
     private final KafkaActivationSpec activationSpec;
 
-    private final BootstrapContext bootstrapContext;
+    // the container's, or the adapter's for virtual thread delivery
+    private final WorkManager workManager;
+
+    private final KafkaEndpointInvoker invoker;
+
+    private final KafkaEndpointPool endpointPool;
+
+    private final Consumer<?, ?> consumer;
+
+    private final KafkaPipeline pipeline;
+
+    private final KafkaParallelDeserializer deserializer;
+
+    private final KafkaConsumerMetrics metrics;
+
+    private final KafkaFailureHandler failures;
+
+    // held by the polling thread for each run, so shutdown can wait for it
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // the next offset of every partition delivered so far
+    private final Map<TopicPartition, OffsetAndMetadata> delivered = new HashMap<>();
+
+    // delivered offsets held back by commit batching
+    private Map<TopicPartition, OffsetAndMetadata> uncommitted = new HashMap<>();
+
+    private int uncommittedRecords;
+
+    private long lastCommit = System.currentTimeMillis();
 
-    private final MessageEndpointFactory endpointFactory;
+    private final int maxPollRecords;
 
-    private final Method onMessageMethod;
+    private int emptyPolls;
 
-    private final KafkaConsumer<?, ?> consumer;
+    private volatile long nextPollTime;
+
+    private long nextLagUpdate;
+
+    private volatile boolean cancelled;
 
     /**
      * @since 1.0
      */
     KafkaTimerTask(MessageEndpointFactory messageEndpointFactory, KafkaActivationSpec activationSpec,
-            BootstrapContext bootstrapContext) throws NoSuchMethodException, SecurityException {
+            BootstrapContext bootstrapContext, KafkaConsumerMetrics metrics)
+            throws NoSuchMethodException, SecurityException {
+
+        this(messageEndpointFactory, activationSpec, bootstrapContext, metrics, KafkaConsumer::new);
+    }
+
+    /**
+     * Create a task polling a consumer built from the activation spec's
+     * consumer properties by the given factory, e.g. a mock consumer.
+     *
+     * @since 1.1
+     */
+    KafkaTimerTask(MessageEndpointFactory messageEndpointFactory, KafkaActivationSpec activationSpec,
+            BootstrapContext bootstrapContext, KafkaConsumerMetrics metrics,
+            Function<Map<String, Object>, Consumer<?, ?>> consumerFactory)
+            throws NoSuchMethodException, SecurityException {
 
-        this.endpointFactory = messageEndpointFactory;
         this.activationSpec = activationSpec;
-        this.bootstrapContext = bootstrapContext;
+        workManager = getWorkManager(activationSpec, bootstrapContext);
+        this.metrics = metrics;
 
         id = String.format("%s-%s", messageEndpointFactory.getEndpointClass().getSimpleName(), UUID.randomUUID());
-        onMessageMethod = messageEndpointFactory.getEndpointClass().getMethod("onMessage", ConsumerRecords.class);
+        invoker = KafkaEndpointInvoker.forEndpoint(messageEndpointFactory.getEndpointClass());
 
         Map<String, Object> properties = activationSpec.getConsumerProperties();
 
         properties.put(ConsumerConfig.CLIENT_ID_CONFIG, id);
 
-        // set up consumer and subscribe
-        consumer = new KafkaConsumer<>(properties);
+        maxPollRecords = Integer
+                .parseInt(String.valueOf(properties.getOrDefault(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 500)));
+
+        // takes over deserialization when set, the work decoding each record
+        failures = KafkaFailureHandler.forSpec(id, activationSpec, properties, metrics);
+
+        if (failures == null && Boolean.TRUE.equals(activationSpec.getParallelDeserialization())) {
+
+            // consumer fetches raw bytes, decoded after each poll
+            deserializer = new KafkaParallelDeserializer(properties,
+                    activationSpec.getResourceAdapter().getDeserializationPool());
+
+        } else {
+
+            deserializer = null;
+        }
+
+        List<String> retryTopics = failures == null ? Collections.emptyList() : failures.getRetryTopics();
+
+        // set up consumer and subscribe, to the retry topics as well
+        consumer = consumerFactory.apply(properties);
+        metrics.addConsumer(id, consumer);
 
         if (activationSpec.getTopicPattern() != null && !activationSpec.getTopicPattern().trim().isEmpty()) {
 
-            Pattern pattern = Pattern.compile(activationSpec.getTopicPattern());
-            consumer.subscribe(pattern);
+            Pattern pattern = Pattern.compile(retryTopics.isEmpty() ? activationSpec.getTopicPattern()
+                    : String.format("(%s)|%s", activationSpec.getTopicPattern(),
+                            retryTopics.stream().map(Pattern::quote).collect(Collectors.joining("|"))));
+            consumer.subscribe(pattern, new RebalanceListener());
             LOGGER.info(String.format("KafkaTimerTask :: subscribed to topic pattern %s :: %s", pattern, id));
 
         } else {
 
-            consumer.subscribe(activationSpec.getTopicList());
-            LOGGER.info(String.format("KafkaTimerTask :: subscribed to topic list %s :: %s",
-                    activationSpec.getTopicList(), id));
+            List<String> topics = new ArrayList<>(activationSpec.getTopicList());
+
+            for (String retryTopic : retryTopics) {
+
+                if (!topics.contains(retryTopic)) {
+
+                    topics.add(retryTopic);
+                }
+            }
+
+            consumer.subscribe(topics, new RebalanceListener());
+            LOGGER.info(String.format("KafkaTimerTask :: subscribed to topic list %s :: %s", topics, id));
+        }
+
+        int keyLanes = activationSpec.getKeyOrderedLanes() == null ? 0 : activationSpec.getKeyOrderedLanes();
+
+        // by default keep enough endpoints for one per lane
+        endpointPool = new KafkaEndpointPool(messageEndpointFactory, activationSpec.getEndpointPoolSize() == null
+                ? Math.max(1, keyLanes) : activationSpec.getEndpointPoolSize());
+
+        if (keyLanes > 0 || Boolean.TRUE.equals(activationSpec.getPipelined())) {
+
+            pipeline = new KafkaPipeline(endpointPool, invoker, metrics, failures, workManager,
+                    activationSpec.getMaxQueuedRecords(), keyLanes);
+
+        } else {
+
+            pipeline = null;
         }
     }
 
+    private static WorkManager getWorkManager(KafkaActivationSpec activationSpec, BootstrapContext bootstrapContext) {
+
+        if (Boolean.TRUE.equals(activationSpec.getVirtualThreadDelivery())) {
+
+            WorkManager workManager = activationSpec.getResourceAdapter().getVirtualThreadWorkManager();
+
+            if (workManager != null) {
+
+                return workManager;
+            }
+
+            LOGGER.warning("KafkaTimerTask :: virtual threads not supported, delivering on the work manager");
+        }
+
+        return bootstrapContext.getWorkManager();
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -93,29 +224,527 @@ class KafkaTimerTask extends TimerTask {
     @Override
     public void run() {
 
+        try {
+
+            pollOnce();
+
+        } catch (RuntimeException ex) {
+
+            // an exception escaping would cancel the timer
+            LOGGER.log(Level.SEVERE, "Poll failure :: " + id, ex);
+        }
+    }
+
+    /**
+     * Run one poll cycle, leaving any failure to the caller.
+     *
+     * @since 1.1
+     */
+    void pollOnce() {
+
         LOGGER.fine("KafkaTimerTask :: run :: " + id);
 
+        boolean adaptive = Boolean.TRUE.equals(activationSpec.getAdaptivePollInterval());
+
+        if (cancelled || adaptive && getPollDelay() > 0) {
+
+            // backing off after empty polls
+            return;
+        }
+
+        lock.lock();
+
+        try {
+
+            if (cancelled) {
+
+                return;
+            }
+
+            int count;
+
+            // with an adaptive interval a full batch suggests there is more
+            // waiting, so poll again straight away
+            do {
+
+                count = pipeline != null ? pollPipelined() : pollAndDeliver();
+
+            } while (adaptive && count >= maxPollRecords && !cancelled);
+
+            if (adaptive) {
+
+                backOff(count);
+            }
+
+            // commit anything held back for longer than the commit interval
+            commitIfDue();
+
+            updateLag();
+
+        } catch (WakeupException ex) {
+
+            // woken up by cancel to shut down
+            if (!cancelled) {
+
+                throw ex;
+            }
+
+        } finally {
+
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Refresh the partition lag metrics, at most every LAG_INTERVAL_MS as end
+     * offsets are fetched from the brokers. The consumer isn't thread safe so
+     * this has to happen on the polling thread.
+     */
+    private void updateLag() {
+
+        long now = System.currentTimeMillis();
+
+        if (now < nextLagUpdate || cancelled) {
+
+            return;
+        }
+
+        nextLagUpdate = now + LAG_INTERVAL_MS;
+
+        try {
+
+            Set<TopicPartition> assignment = consumer.assignment();
+            Map<TopicPartition, Long> lag = new HashMap<>();
+
+            for (Map.Entry<TopicPartition, Long> end : consumer.endOffsets(assignment).entrySet()) {
+
+                lag.put(end.getKey(), Math.max(0, end.getValue() - consumer.position(end.getKey())));
+            }
+
+            metrics.updateLag(id, lag);
+
+        } catch (KafkaException ex) {
+
+            LOGGER.log(Level.FINE, "KafkaTimerTask :: unable to update lag :: " + id, ex);
+        }
+    }
+
+    /**
+     * @return the number of ms until the next poll is due, non zero while an
+     *         adaptive poll interval is backing off
+     * @since 1.1
+     */
+    long getPollDelay() {
+
+        return Math.max(0, nextPollTime - System.currentTimeMillis());
+    }
+
+    /**
+     * Back off exponentially over consecutive empty polls, up to
+     * maxPollInterval, and reset as soon as records arrive.
+     */
+    private void backOff(int count) {
+
+        if (count > 0) {
+
+            emptyPolls = 0;
+            nextPollTime = 0;
+
+            return;
+        }
+
+        // pollInterval after the first empty poll, doubling from there
+        long interval = Math.max(1L, activationSpec.getPollInterval()) << emptyPolls;
+
+        emptyPolls = Math.min(emptyPolls + 1, 30);
+
+        nextPollTime = System.currentTimeMillis() + Math.min(interval, activationSpec.getMaxPollInterval());
+    }
+
+    /**
+     * Poll the consumer, deserializing the result in parallel if the consumer
+     * was set up for raw bytes, and holding back retries which aren't due.
+     */
+    @SuppressWarnings("unchecked")
+    private ConsumerRecords<?, ?> poll() {
+
+        if (failures != null) {
+
+            failures.resumeDue(consumer);
+        }
+
         ConsumerRecords<?, ?> records = consumer.poll(activationSpec.getFetchMaxWaitMs());
 
-        // if we got noting just return
         if (records.isEmpty()) {
 
+            return records;
+        }
+
+        metrics.recordPoll(records.count());
+
+        if (deserializer != null) {
+
+            records = deserializer.deserialize((ConsumerRecords<byte[], byte[]>) records, consumer);
+        }
+
+        return failures == null ? records : failures.hold(records, consumer);
+    }
+
+    /**
+     * Record delivered offsets, committing them asynchronously once the commit
+     * batch is due.
+     */
+    private void commit(Map<TopicPartition, OffsetAndMetadata> offsets, int records) {
+
+        delivered.putAll(offsets);
+        uncommitted.putAll(offsets);
+        uncommittedRecords += records;
+
+        commitIfDue();
+    }
+
+    /**
+     * Commit the delivered offsets held back asynchronously if either the
+     * record count or interval of the commit batch has been reached, or on
+     * every call without batching.
+     */
+    private void commitIfDue() {
+
+        if (uncommitted.isEmpty()) {
+
             return;
         }
 
+        Integer maxRecords = activationSpec.getCommitIntervalRecords();
+        Long interval = activationSpec.getCommitIntervalMs();
+
+        boolean due = maxRecords == null && interval == null
+                || maxRecords != null && uncommittedRecords >= maxRecords
+                || interval != null && System.currentTimeMillis() - lastCommit >= interval;
+
+        if (due) {
+
+            commitAsync();
+        }
+    }
+
+    /**
+     * Commit the delivered offsets held back asynchronously, timing the
+     * commit. Offsets of a failed commit are held back again for the next
+     * one unless overtaken in the meantime.
+     */
+    private void commitAsync() {
+
+        Map<TopicPartition, OffsetAndMetadata> offsets = uncommitted;
+        long start = System.nanoTime();
+
+        metrics.recordCommitted(uncommittedRecords);
+
+        uncommitted = new HashMap<>();
+        uncommittedRecords = 0;
+        lastCommit = System.currentTimeMillis();
+
+        // called back on the polling thread
+        consumer.commitAsync(offsets, (committed, ex) -> {
+
+            metrics.recordCommit(System.nanoTime() - start, ex);
+
+            if (ex != null) {
+
+                LOGGER.log(Level.WARNING, "KafkaTimerTask :: commit failed :: " + id, ex);
+
+                offsets.forEach((partition, offset) -> {
+
+                    // retry unless revoked or already superseded by a later
+                    // commit, which a stale offset would move backwards
+                    if (offset.equals(delivered.get(partition))) {
+
+                        uncommitted.putIfAbsent(partition, offset);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Commit everything delivered synchronously, including offsets held back
+     * by commit batching and making sure earlier asynchronous commits aren't
+     * lost.
+     */
+    private void commitSync() {
+
+        if (delivered.isEmpty()) {
+
+            return;
+        }
+
+        long start = System.nanoTime();
+
+        try {
+
+            try {
+
+                consumer.commitSync(delivered);
+
+            } catch (WakeupException ex) {
+
+                // left pending by cancel if it didn't interrupt a poll
+                consumer.commitSync(delivered);
+            }
+
+            metrics.recordCommit(System.nanoTime() - start, null);
+            metrics.recordCommitted(uncommittedRecords);
+
+            uncommitted = new HashMap<>();
+            uncommittedRecords = 0;
+            lastCommit = System.currentTimeMillis();
+
+        } catch (KafkaException ex) {
+
+            metrics.recordCommit(System.nanoTime() - start, ex);
+
+            throw ex;
+        }
+    }
+
+    /**
+     * @return the offsets to commit once the given records are delivered
+     * @since 1.1
+     */
+    static Map<TopicPartition, OffsetAndMetadata> nextOffsets(ConsumerRecords<?, ?> records) {
+
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+
+        for (TopicPartition partition : records.partitions()) {
+
+            List<? extends ConsumerRecord<?, ?>> list = records.records(partition);
+
+            offsets.put(partition, new OffsetAndMetadata(list.get(list.size() - 1).offset() + 1));
+        }
+
+        return offsets;
+    }
+
+    /**
+     * Standard poll cycle - poll, deliver synchronously and commit.
+     *
+     * @return the number of records polled
+     */
+    private int pollAndDeliver() {
+
+        ConsumerRecords<?, ?> records = poll();
+
+        // if we got noting just return
+        if (records.isEmpty()) {
+
+            return 0;
+        }
+
         try {
 
-            // called synchronously
-            bootstrapContext.getWorkManager().doWork(new KafkaWork(endpointFactory, records, onMessageMethod));
+            if (Boolean.TRUE.equals(activationSpec.getPartitionedDelivery()) && records.partitions().size() > 1) {
+
+                deliverByPartition(records);
+
+            } else {
+
+                try {
+
+                    // called synchronously
+                    workManager.doWork(new KafkaWork(endpointPool, records, invoker, metrics, failures));
+
+                } catch (WorkException ex) {
+
+                    seekBack(records, records.partitions());
+
+                    throw ex;
+                }
+            }
+
+            Map<TopicPartition, OffsetAndMetadata> offsets = nextOffsets(records);
+
+            rewind(offsets);
 
             // then manually committed if no error thrown by the message
             // endpoint
-            consumer.commitAsync();
+            commit(offsets, records.count());
 
         } catch (WorkException ex) {
 
             LOGGER.log(Level.SEVERE, "Work manager failure", ex);
+
+            rewind(new HashMap<>());
+        }
+
+        return records.count();
+    }
+
+    /**
+     * Keep the given offsets from being committed past records the failure
+     * handler couldn't publish, seeking their partitions back to be
+     * redelivered from them.
+     */
+    private void rewind(Map<TopicPartition, OffsetAndMetadata> offsets) {
+
+        Map<TopicPartition, Long> rewinds = failures == null ? Collections.emptyMap() : failures.drainRewinds();
+
+        if (rewinds.isEmpty()) {
+
+            return;
+        }
+
+        if (pipeline != null) {
+
+            rewinds = pipeline.rewind(rewinds);
         }
+
+        rewinds.forEach((partition, offset) -> {
+
+            OffsetAndMetadata next = offsets.get(partition);
+
+            if (next != null && next.offset() > offset) {
+
+                offsets.put(partition, new OffsetAndMetadata(offset));
+            }
+        });
+
+        failures.holdBack(rewinds, consumer);
+    }
+
+    /**
+     * Pipelined poll cycle - commit whatever has been delivered since the last
+     * cycle, apply back pressure and hand the next poll result to the
+     * pipeline without waiting for its delivery.
+     *
+     * @return the number of records polled
+     */
+    private int pollPipelined() {
+
+        int count = pipeline.drainCompletedRecords();
+        Map<TopicPartition, OffsetAndMetadata> offsets = pipeline.drainCompleted();
+
+        // reported before the work completes, so drained after it
+        rewind(offsets);
+
+        if (!offsets.isEmpty()) {
+
+            commit(offsets, count);
+        }
+
+        // pause saturated partitions, resume the ones which have drained
+        Set<TopicPartition> saturated = pipeline.getSaturatedPartitions();
+        saturated.retainAll(consumer.assignment());
+
+        Set<TopicPartition> drained = new HashSet<>(consumer.paused());
+        drained.removeAll(saturated);
+
+        if (failures != null) {
+
+            // retries waiting to become due stay paused
+            drained.removeAll(failures.getDelayed());
+        }
+
+        if (!saturated.isEmpty()) {
+
+            consumer.pause(saturated);
+        }
+
+        if (!drained.isEmpty()) {
+
+            consumer.resume(drained);
+        }
+
+        ConsumerRecords<?, ?> records = poll();
+
+        if (records.isEmpty()) {
+
+            // retry anything the work manager rejected earlier
+            pipeline.dispatch();
+
+        } else {
+
+            pipeline.submit(records);
+        }
+
+        return records.count();
+    }
+
+    /**
+     * Deliver each partition of the poll result as a separate, concurrently
+     * scheduled work item and wait for all of them to complete.
+     *
+     * @since 1.1
+     */
+    private void deliverByPartition(ConsumerRecords<?, ?> records) throws WorkException {
+
+        Set<TopicPartition> partitions = records.partitions();
+        KafkaWorkLatch latch = new KafkaWorkLatch(partitions.size());
+        Map<TopicPartition, KafkaWork> works = new HashMap<>();
+
+        for (TopicPartition partition : partitions) {
+
+            KafkaWork work = new KafkaWork(endpointPool, slice(records, partition), invoker, metrics, failures);
+
+            works.put(partition, work);
+
+            try {
+
+                workManager.scheduleWork(work, WorkManager.INDEFINITE, null, latch);
+
+            } catch (WorkException ex) {
+
+                // don't leave already scheduled partitions running behind
+                // the next poll
+                latch.rejected(work, ex);
+                latch.skip(partitions.size() - works.size());
+                break;
+            }
+        }
+
+        try {
+
+            latch.await();
+
+        } catch (WorkException ex) {
+
+            List<TopicPartition> undelivered = new ArrayList<>();
+
+            for (TopicPartition partition : partitions) {
+
+                KafkaWork work = works.get(partition);
+
+                if (work == null || latch.isFailed(work)) {
+
+                    undelivered.add(partition);
+                }
+            }
+
+            seekBack(records, undelivered);
+
+            throw ex;
+        }
+    }
+
+    /**
+     * Seek the given partitions back to their first record in the poll result,
+     * so records the work manager never delivered are polled again rather than
+     * committed past.
+     */
+    private void seekBack(ConsumerRecords<?, ?> records, Collection<TopicPartition> partitions) {
+
+        for (TopicPartition partition : partitions) {
+
+            consumer.seek(partition, records.records(partition).get(0).offset());
+        }
+    }
+
+    /**
+     * @return the records of a single partition of the given poll result
+     * @since 1.1
+     */
+    static <K, V> ConsumerRecords<K, V> slice(ConsumerRecords<K, V> records, TopicPartition partition) {
+
+        return new ConsumerRecords<>(Collections.singletonMap(partition, records.records(partition)));
     }
 
     /**
@@ -128,6 +757,190 @@ class KafkaTimerTask extends TimerTask {
 
         LOGGER.info("KafkaTimerTask :: cancel :: " + id);
 
-        return super.cancel();
+        cancelled = true;
+
+        boolean result = super.cancel();
+
+        // break out of a blocking poll or commit
+        consumer.wakeup();
+
+        return result;
+    }
+
+    /**
+     * Shut down - stop polling, wait for deliveries in progress, commit the
+     * delivered offsets synchronously and close the consumer so it leaves the
+     * group straight away rather than by session timeout, all within the
+     * given timeout, then release the idle endpoints.
+     *
+     * @return true if everything delivered was committed and the consumer
+     *         closed within the timeout
+     * @since 1.1
+     */
+    boolean close(long timeoutMs) {
+
+        LOGGER.info("KafkaTimerTask :: close :: " + id);
+
+        cancel();
+
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        boolean clean = false;
+
+        try {
+
+            if (lock.tryLock(timeoutMs, TimeUnit.MILLISECONDS)) {
+
+                try {
+
+                    clean = closeConsumer(deadline);
+
+                } finally {
+
+                    lock.unlock();
+                }
+
+            } else {
+
+                LOGGER.warning(String.format("KafkaTimerTask :: delivery still running after %dms, consumer left open"
+                        + " :: %s", timeoutMs, id));
+            }
+
+        } catch (InterruptedException ex) {
+
+            Thread.currentThread().interrupt();
+
+        } finally {
+
+            endpointPool.close();
+            metrics.removeConsumer(id);
+
+            if (deserializer != null) {
+
+                deserializer.close();
+            }
+
+            if (failures != null) {
+
+                failures.close();
+            }
+        }
+
+        return clean;
+    }
+
+    private boolean closeConsumer(long deadline) throws InterruptedException {
+
+        boolean clean = true;
+
+        if (pipeline != null) {
+
+            clean = pipeline.close(Math.max(0, deadline - System.currentTimeMillis()));
+
+            Map<TopicPartition, OffsetAndMetadata> offsets = pipeline.drainCompleted();
+
+            rewind(offsets);
+            delivered.putAll(offsets);
+        }
+
+        try {
+
+            commitSync();
+
+        } catch (KafkaException ex) {
+
+            LOGGER.log(Level.WARNING, "KafkaTimerTask :: final commit failed :: " + id, ex);
+            clean = false;
+        }
+
+        try {
+
+            consumer.close(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+
+        } catch (KafkaException ex) {
+
+            LOGGER.log(Level.WARNING, "KafkaTimerTask :: close failed :: " + id, ex);
+            clean = false;
+        }
+
+        return clean;
+    }
+
+    /**
+     * Rebalance listener, called back on the polling thread from within poll.
+     * Before partitions are handed over everything delivered from them is
+     * committed synchronously, so the new owner carries on from there, and
+     * records still queued for them are dropped to be redelivered by the new
+     * owner rather than delivered twice.
+     */
+    private class RebalanceListener implements ConsumerRebalanceListener {
+
+        @Override
+        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+
+            LOGGER.info(String.format("KafkaTimerTask :: partitions revoked %s :: %s", partitions, id));
+
+            if (pipeline != null) {
+
+                try {
+
+                    if (!pipeline.revoke(partitions, activationSpec.getShutdownTimeoutMs())) {
+
+                        LOGGER.warning("KafkaTimerTask :: delivery still running on revoke :: " + id);
+                    }
+
+                } catch (InterruptedException ex) {
+
+                    Thread.currentThread().interrupt();
+                }
+
+                Map<TopicPartition, OffsetAndMetadata> offsets = pipeline.drainCompleted();
+
+                rewind(offsets);
+                delivered.putAll(offsets);
+            }
+
+            try {
+
+                commitSync();
+
+            } catch (KafkaException ex) {
+
+                LOGGER.log(Level.WARNING, "KafkaTimerTask :: commit on revoke failed :: " + id, ex);
+            }
+
+            if (failures != null) {
+
+                failures.revoke(partitions);
+            }
+
+            // never commit over the new owner's progress
+            delivered.keySet().removeAll(partitions);
+            uncommitted.keySet().removeAll(partitions);
+        }
+
+        @Override
+        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+
+            LOGGER.info(String.format("KafkaTimerTask :: partitions assigned %s :: %s", partitions, id));
+
+            // measure the lag of the new assignment on the next run
+            nextLagUpdate = 0;
+        }
+    }
+
+    /**
+     * @since 1.1
+     */
+    boolean isCancelled() {
+
+        return cancelled;
+    }
+
+    /**
+     * @since 1.1
+     */
+    String getId() {
+
+        return id;
     }
 }
@@ -16,18 +16,31 @@
 package com.jftechnology.jca.kafka.consumer;
 
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.resource.ResourceException;
 import javax.resource.spi.endpoint.MessageEndpoint;
-import javax.resource.spi.endpoint.MessageEndpointFactory;
 import javax.resource.spi.work.Work;
 
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.SerializationException;
 
 /**
+ * KafkaWork - delivers a batch of records to an endpoint. With a
+ * {@link KafkaFailureHandler} a failed batch is broken down and delivered one
+ * record at a time, per record listeners always are, so only the records
+ * which fail are handed on for retry or dead-lettering. Should one of them
+ * fail to be handed on, the rest of the batch is left undelivered and the
+ * offsets to redeliver it from reported to the handler. The handler has the
+ * consumer fetch raw bytes, records are deserialized here so one which can't
+ * be is handed on too.
+ *
  * @author stephen.flynn@jftechnology.com
  * @since 1.0
  */
@@ -35,24 +48,31 @@ class KafkaWork implements Work {
 
     private static final Logger LOGGER = Logger.getLogger(KafkaWork.class.getName());
 
-    private final MessageEndpointFactory factory;
+    private final KafkaEndpointPool endpointPool;
 
     private final ConsumerRecords<?, ?> records;
 
-    private final Method onMessageMethod;
+    private final KafkaEndpointInvoker invoker;
+
+    private final KafkaConsumerMetrics metrics;
 
-    private MessageEndpoint endpoint;
+    private final KafkaFailureHandler failures;
 
     /**
+     * @param failures the handler for records which fail, or null to just log
+     *            failures
      * @since 1.0
      */
-    KafkaWork(MessageEndpointFactory factory, ConsumerRecords<?, ?> records, Method onMessageMethod) {
+    KafkaWork(KafkaEndpointPool endpointPool, ConsumerRecords<?, ?> records, KafkaEndpointInvoker invoker,
+            KafkaConsumerMetrics metrics, KafkaFailureHandler failures) {
 
         LOGGER.fine("KafkaWork :: create");
 
-        this.factory = factory;
+        this.endpointPool = endpointPool;
         this.records = records;
-        this.onMessageMethod = onMessageMethod;
+        this.invoker = invoker;
+        this.metrics = metrics;
+        this.failures = failures;
     }
 
     /**
@@ -65,20 +85,134 @@ class KafkaWork implements Work {
 
         LOGGER.fine("KafkaWork :: run");
 
+        if (failures == null) {
+
+            deliver(records);
+
+            return;
+        }
+
+        if (!invoker.isPerRecord()) {
+
+            try {
+
+                if (deliver(failures.deserialize(records)) == null) {
+
+                    return;
+                }
+
+            } catch (SerializationException ex) {
+
+                LOGGER.log(Level.WARNING, "KafkaWork :: delivering one record at a time", ex);
+            }
+        }
+
+        Map<TopicPartition, Long> unhandled = new HashMap<>();
+
+        for (TopicPartition partition : records.partitions()) {
+
+            for (ConsumerRecord<?, ?> record : records.records(partition)) {
+
+                if (!unhandled.isEmpty() || !handle(record)) {
+
+                    unhandled.put(partition, record.offset());
+                    break;
+                }
+            }
+        }
+
+        if (!unhandled.isEmpty()) {
+
+            failures.rewind(unhandled);
+        }
+    }
+
+    /**
+     * Deliver a single record, handing it to the failure handler if that
+     * fails.
+     *
+     * @return false if the record was neither delivered nor handed on
+     */
+    private boolean handle(ConsumerRecord<?, ?> record) {
+
+        Throwable failure;
+
         try {
 
-            endpoint = factory.createEndpoint(null);
-            endpoint.beforeDelivery(onMessageMethod);
-            onMessageMethod.invoke(endpoint, records);
-            endpoint.afterDelivery();
+            failure = deliver(single(failures.deserialize(record)));
 
-        } catch (ResourceException | NoSuchMethodException | IllegalAccessException | IllegalArgumentException
-                | InvocationTargetException ex) {
+        } catch (SerializationException ex) {
+
+            failure = ex;
+        }
+
+        return failure == null || failures.failed(record, failure);
+    }
+
+    /**
+     * Deliver the records in a single endpoint call.
+     *
+     * @return the failure, or null if delivered
+     */
+    private Throwable deliver(ConsumerRecords<?, ?> batch) {
+
+        MessageEndpoint endpoint = null;
+
+        try {
+
+            endpoint = endpointPool.acquire();
+            endpoint.beforeDelivery(invoker.getMethod());
+
+            long start = System.nanoTime();
+            boolean failed = true;
+
+            try {
+
+                invoker.invoke(endpoint, batch);
+                failed = false;
+
+            } finally {
+
+                metrics.recordDelivery(System.nanoTime() - start, failed);
+                endpoint.afterDelivery();
+            }
+
+            endpointPool.release(endpoint);
+
+            return null;
+
+        } catch (ResourceException | NoSuchMethodException | IllegalAccessException | InvocationTargetException
+                | RuntimeException ex) {
 
             LOGGER.log(Level.SEVERE, null, ex);
+
+            // don't reuse an endpoint in an unknown state
+            if (endpoint != null) {
+
+                endpointPool.discard(endpoint);
+            }
+
+            return ex instanceof InvocationTargetException && ex.getCause() != null ? ex.getCause() : ex;
+
+        } catch (Error ex) {
+
+            if (endpoint != null) {
+
+                endpointPool.discard(endpoint);
+            }
+
+            // completes the work with the error rather than as a failed record
+            throw ex;
         }
     }
 
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static ConsumerRecords<?, ?> single(ConsumerRecord<?, ?> record) {
+
+        return new ConsumerRecords(Collections.singletonMap(new TopicPartition(record.topic(), record.partition()),
+                Collections.singletonList(record)));
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -88,10 +222,5 @@ class KafkaWork implements Work {
     public void release() {
 
         LOGGER.fine("KafkaWork :: release");
-
-        if (endpoint != null) {
-
-            endpoint.release();
-        }
     }
 }
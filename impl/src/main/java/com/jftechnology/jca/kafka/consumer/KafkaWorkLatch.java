@@ -0,0 +1,149 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.consumer;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import javax.resource.spi.work.Work;
+import javax.resource.spi.work.WorkAdapter;
+import javax.resource.spi.work.WorkEvent;
+import javax.resource.spi.work.WorkException;
+
+/**
+ * KafkaWorkLatch - work listener allowing the polling thread to wait for a
+ * fixed number of concurrently scheduled {@link KafkaWork} items to finish.
+ * <p>
+ * Each item counts once however its end is reported, as a work manager may
+ * both notify the rejection and throw it from scheduleWork. Items which were
+ * rejected or failed are remembered, so the caller can redeliver their
+ * records.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+class KafkaWorkLatch extends WorkAdapter {
+
+    private final CountDownLatch latch;
+
+    private final Set<Work> finished = ConcurrentHashMap.newKeySet();
+
+    private final Set<Work> failed = ConcurrentHashMap.newKeySet();
+
+    private volatile WorkException failure;
+
+    /**
+     * @since 1.1
+     */
+    KafkaWorkLatch(int count) {
+
+        latch = new CountDownLatch(count);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public void workRejected(WorkEvent event) {
+
+        finish(event.getWork(), event.getException());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public void workCompleted(WorkEvent event) {
+
+        finish(event.getWork(), event.getException());
+    }
+
+    /**
+     * Account for a work item whose scheduling threw.
+     *
+     * @since 1.1
+     */
+    void rejected(Work work, WorkException ex) {
+
+        finish(work, ex);
+    }
+
+    private void finish(Work work, WorkException ex) {
+
+        if (finished.add(work)) {
+
+            if (ex != null) {
+
+                failed.add(work);
+                failure = ex;
+            }
+
+            latch.countDown();
+        }
+    }
+
+    /**
+     * Account for work items that were never scheduled.
+     *
+     * @since 1.1
+     */
+    void skip(int count) {
+
+        for (int i = 0; i < count; i++) {
+
+            latch.countDown();
+        }
+    }
+
+    /**
+     * @return true if the work item was rejected or failed
+     * @since 1.1
+     */
+    boolean isFailed(Work work) {
+
+        return failed.contains(work);
+    }
+
+    /**
+     * Wait for all work items to complete.
+     *
+     * @throws WorkException if any of the work items was rejected or failed
+     * @since 1.1
+     */
+    void await() throws WorkException {
+
+        try {
+
+            latch.await();
+
+        } catch (InterruptedException ex) {
+
+            Thread.currentThread().interrupt();
+
+            throw new WorkException("Interrupted waiting for work completion", ex);
+        }
+
+        if (failure != null) {
+
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.producer;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.resource.spi.ConnectionRequestInfo;
+
+/**
+ * KafkaConnectionRequestInfo - the producer property overrides (e.g. acks,
+ * compression.type, linger.ms) a connection was requested with. Connections,
+ * and the producers behind them, are only shared between requests with equal
+ * overrides.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+class KafkaConnectionRequestInfo implements ConnectionRequestInfo {
+
+    /**
+     * Request info for connections using the factory's configuration as is.
+     */
+    static final KafkaConnectionRequestInfo DEFAULT = new KafkaConnectionRequestInfo(Collections.emptyMap());
+
+    private final Map<String, String> overrides;
+
+    /**
+     * @since 1.1
+     */
+    KafkaConnectionRequestInfo(Map<String, ?> overrides) {
+
+        Map<String, String> values = new HashMap<>();
+
+        // compare by string value, so 1 and "1" request the same producer
+        overrides.forEach((key, value) -> values.put(key, String.valueOf(value)));
+
+        this.overrides = Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * @return the given producer properties with the overrides applied
+     * @since 1.1
+     */
+    Properties apply(Properties properties) {
+
+        properties.putAll(overrides);
+
+        return properties;
+    }
+
+    /**
+     * @since 1.1
+     */
+    Map<String, String> getOverrides() {
+
+        return overrides;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public boolean equals(Object obj) {
+
+        if (obj == this) {
+
+            return true;
+        }
+
+        if (!(obj instanceof KafkaConnectionRequestInfo)) {
+
+            return false;
+        }
+
+        return overrides.equals(((KafkaConnectionRequestInfo) obj).overrides);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public int hashCode() {
+
+        return overrides.hashCode();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public String toString() {
+
+        return "KafkaConnectionRequestInfo" + overrides;
+    }
+}
@@ -19,7 +19,6 @@ import java.io.PrintWriter;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
-import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import javax.resource.NotSupportedException;
@@ -33,7 +32,7 @@ import javax.resource.spi.ManagedConnectionMetaData;
 import javax.security.auth.Subject;
 import javax.transaction.xa.XAResource;
 
-import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
 
 import com.jftechnology.jca.kafka.consumer.KafkaResourceAdapter;
 
@@ -47,19 +46,23 @@ public class KafkaManagedConnection<K, V> implements ManagedConnection {
 
     private final List<ConnectionEventListener> listeners = new LinkedList<>();
 
-    private final ConnectionRequestInfo requestInfo;
+    private final KafkaManagedConnectionFactory factory;
 
-    private KafkaProducer<K, V> producer;
+    private final KafkaConnectionRequestInfo requestInfo;
+
+    private Producer<K, V> producer;
 
     private PrintWriter writer;
 
     /**
      * @since 1.0
      */
-    KafkaManagedConnection(KafkaProducer<K, V> producer, ConnectionRequestInfo requestInfo) {
+    KafkaManagedConnection(KafkaManagedConnectionFactory factory, Producer<K, V> producer,
+            KafkaConnectionRequestInfo requestInfo) {
 
         LOGGER.info("KafkaManagedConnection :: create");
 
+        this.factory = factory;
         this.producer = producer;
         this.requestInfo = requestInfo;
     }
@@ -87,7 +90,9 @@ public class KafkaManagedConnection<K, V> implements ManagedConnection {
 
         LOGGER.info("Destroying managed connection...");
 
-        producer.close(60, TimeUnit.SECONDS);
+        // the producer is shared with other connections for the same request
+        // info, the factory closes it once the last one has gone
+        factory.releaseProducer(requestInfo);
 
         LOGGER.info("Destroyed managed connection");
     }
@@ -195,6 +200,14 @@ public class KafkaManagedConnection<K, V> implements ManagedConnection {
         listeners.remove(listener);
     }
 
+    /**
+     * @since 1.1
+     */
+    KafkaConnectionRequestInfo getRequestInfo() {
+
+        return requestInfo;
+    }
+
     /**
      * @since 1.0
      */
@@ -16,10 +16,15 @@
 package com.jftechnology.jca.kafka.producer;
 
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import javax.resource.NotSupportedException;
 import javax.resource.ResourceException;
@@ -46,7 +51,7 @@ import com.jftechnology.jca.kafka.api.KafkaProducerFactory;
         connectionImpl = KafkaProducer.class,
         connectionFactory = KafkaProducerFactory.class,
         connectionFactoryImpl = KafkaProducerFactoryImpl.class)
-public class KafkaManagedConnectionFactory implements ManagedConnectionFactory, ConnectionRequestInfo {
+public class KafkaManagedConnectionFactory implements ManagedConnectionFactory {
 
     /**
      * The serialVersionUID property.
@@ -136,9 +141,28 @@ public class KafkaManagedConnectionFactory implements ManagedConnectionFactory,
             defaultValue = "100")
     private Long reconnectBackoffMs = 100L;
 
+    @ConfigProperty(
+            type = Integer.class,
+            description = "Number of KafkaProducer instances sends are spread over",
+            defaultValue = "1")
+    private Integer producerCount = 1;
+
+    @ConfigProperty(
+            type = String.class,
+            description = "Producer selection with more than one producer, key, thread or round-robin (unordered)",
+            defaultValue = KafkaProducerPool.KEY)
+    private String producerSelection = KafkaProducerPool.KEY;
+
     private transient PrintWriter writer;
 
-    private transient KafkaProducer<?, ?> producer;
+    private transient Map<KafkaConnectionRequestInfo, Producer<?, ?>> producers;
+
+    private transient Map<KafkaConnectionRequestInfo, Integer> connections;
+
+    // numbers the producers created for request info overriding properties
+    private transient int overridden;
+
+    private transient KafkaProducerMetrics metrics;
 
     /**
      * {@inheritDoc}
@@ -159,9 +183,7 @@ public class KafkaManagedConnectionFactory implements ManagedConnectionFactory,
     @Override
     public Object createConnectionFactory(ConnectionManager manager) throws ResourceException {
 
-        Producer<?, ?> producer = (Producer<?, ?>) manager.allocateConnection(this, this);
-
-        return new KafkaProducerFactoryImpl<>(producer);
+        return new KafkaProducerFactoryImpl<>(this, manager);
     }
 
     /**
@@ -173,12 +195,134 @@ public class KafkaManagedConnectionFactory implements ManagedConnectionFactory,
     public KafkaManagedConnection<?, ?> createManagedConnection(Subject subject, ConnectionRequestInfo requestInfo)
             throws ResourceException {
 
+        KafkaConnectionRequestInfo info = requestInfo instanceof KafkaConnectionRequestInfo
+                ? (KafkaConnectionRequestInfo) requestInfo : KafkaConnectionRequestInfo.DEFAULT;
+
+        return new KafkaManagedConnection<>(this, acquireProducer(info), info);
+    }
+
+    /**
+     * @return the producer shared by all managed connections with the same
+     *         request info, created on first use
+     */
+    private synchronized Producer<?, ?> acquireProducer(KafkaConnectionRequestInfo info) {
+
+        Producer<?, ?> producer = getProducerMap().get(info);
+
         if (producer == null) {
 
-            producer = new KafkaProducer<>(getProducerProperties());
+            Properties properties = getProducerProperties();
+
+            // each producer needs a client id of its own for its metrics, a
+            // pool adds a "-n" suffix per producer to it
+            if (!info.equals(KafkaConnectionRequestInfo.DEFAULT)) {
+
+                properties.setProperty(ProducerConfig.CLIENT_ID_CONFIG, getClientId() + "." + ++overridden);
+            }
+
+            info.apply(properties);
+
+            if (getProducerCount() > 1) {
+
+                producer = new KafkaProducerPool<>(properties, getProducerCount(), getProducerSelection());
+
+            } else {
+
+                producer = new KafkaProducer<>(properties);
+            }
+
+            getProducerMap().put(info, producer);
+
+            // metrics are registered while any producer is open
+            getMetrics().register();
+        }
+
+        getConnectionMap().merge(info, 1, Integer::sum);
+
+        return producer;
+    }
+
+    /**
+     * Called when a managed connection is destroyed, closes the producer once
+     * its last managed connection has gone.
+     *
+     * @since 1.1
+     */
+    void releaseProducer(KafkaConnectionRequestInfo info) {
+
+        Producer<?, ?> producer;
+
+        synchronized (this) {
+
+            if (getConnectionMap().merge(info, -1, Integer::sum) > 0) {
+
+                return;
+            }
+
+            getConnectionMap().remove(info);
+            producer = getProducerMap().remove(info);
+
+            if (getProducerMap().isEmpty()) {
+
+                getMetrics().unregister();
+            }
+        }
+
+        if (producer != null) {
+
+            producer.close(60, TimeUnit.SECONDS);
+        }
+    }
+
+    private KafkaProducerMetrics getMetrics() {
+
+        if (metrics == null) {
+
+            metrics = new KafkaProducerMetrics(this, getClientId() + "-" + uuid);
+        }
+
+        return metrics;
+    }
+
+    /**
+     * @return the producers currently open
+     * @since 1.1
+     */
+    synchronized List<Producer<?, ?>> getProducers() {
+
+        return new ArrayList<>(getProducerMap().values());
+    }
+
+    /**
+     * @return the number of managed connections currently sharing the
+     *         producers
+     * @since 1.1
+     */
+    synchronized int getConnectionCount() {
+
+        return getConnectionMap().values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    private synchronized Map<KafkaConnectionRequestInfo, Producer<?, ?>> getProducerMap() {
+
+        // transient, so may need recreating after deserialization
+        if (producers == null) {
+
+            producers = new HashMap<>();
+        }
+
+        return producers;
+    }
+
+    private synchronized Map<KafkaConnectionRequestInfo, Integer> getConnectionMap() {
+
+        // transient, so may need recreating after deserialization
+        if (connections == null) {
+
+            connections = new HashMap<>();
         }
 
-        return new KafkaManagedConnection<>(producer, requestInfo);
+        return connections;
     }
 
     /**
@@ -190,7 +334,19 @@ public class KafkaManagedConnectionFactory implements ManagedConnectionFactory,
     public ManagedConnection matchManagedConnections(Set connectionSet, Subject subject,
             ConnectionRequestInfo requestInfo) throws ResourceException {
 
-        return (ManagedConnection) connectionSet.toArray()[0];
+        Object info = requestInfo instanceof KafkaConnectionRequestInfo ? requestInfo
+                : KafkaConnectionRequestInfo.DEFAULT;
+
+        for (Object connection : connectionSet) {
+
+            if (connection instanceof KafkaManagedConnection
+                    && info.equals(((KafkaManagedConnection<?, ?>) connection).getRequestInfo())) {
+
+                return (ManagedConnection) connection;
+            }
+        }
+
+        return null;
     }
 
     /**
@@ -626,6 +782,50 @@ public class KafkaManagedConnectionFactory implements ManagedConnectionFactory,
         this.reconnectBackoffMs = reconnectBackoffMs;
     }
 
+    /**
+     * Get the producerCount property.
+     *
+     * @return Returns the producerCount.
+     * @since 1.1
+     */
+    public Integer getProducerCount() {
+
+        return producerCount;
+    }
+
+    /**
+     * Set the producerCount property.
+     *
+     * @param producerCount The producerCount to set.
+     * @since 1.1
+     */
+    public void setProducerCount(Integer producerCount) {
+
+        this.producerCount = producerCount;
+    }
+
+    /**
+     * Get the producerSelection property.
+     *
+     * @return Returns the producerSelection.
+     * @since 1.1
+     */
+    public String getProducerSelection() {
+
+        return producerSelection;
+    }
+
+    /**
+     * Set the producerSelection property.
+     *
+     * @param producerSelection The producerSelection to set.
+     * @since 1.1
+     */
+    public void setProducerSelection(String producerSelection) {
+
+        this.producerSelection = producerSelection;
+    }
+
     /**
      * REVIEW - Returns a hash code value for the object.
      * 
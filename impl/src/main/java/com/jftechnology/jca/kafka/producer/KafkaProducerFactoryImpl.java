@@ -16,11 +16,15 @@
 package com.jftechnology.jca.kafka.producer;
 
 import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.naming.NamingException;
 import javax.naming.Reference;
 import javax.resource.Referenceable;
 import javax.resource.ResourceException;
+import javax.resource.spi.ConnectionManager;
 
 import org.apache.kafka.clients.producer.Producer;
 
@@ -37,16 +41,24 @@ class KafkaProducerFactoryImpl<K, V> implements KafkaProducerFactory<K, V>, Seri
      */
     private static final long serialVersionUID = 1L;
 
-    private final Producer<K, V> producer;
+    private final KafkaManagedConnectionFactory managedConnectionFactory;
+
+    private final ConnectionManager connectionManager;
+
+    private transient ConcurrentMap<KafkaConnectionRequestInfo, Producer<K, V>> producers;
+
+    private transient ConcurrentMap<KafkaConnectionRequestInfo, Object> locks;
 
     private Reference reference;
 
     /**
-     * @since 1.0
+     * @since 1.1
      */
-    KafkaProducerFactoryImpl(Producer<K, V> producer) {
+    KafkaProducerFactoryImpl(KafkaManagedConnectionFactory managedConnectionFactory,
+            ConnectionManager connectionManager) {
 
-        this.producer = producer;
+        this.managedConnectionFactory = managedConnectionFactory;
+        this.connectionManager = connectionManager;
     }
 
     /**
@@ -57,9 +69,73 @@ class KafkaProducerFactoryImpl<K, V> implements KafkaProducerFactory<K, V>, Seri
     @Override
     public Producer<K, V> createProducer() throws ResourceException {
 
+        return getProducer(KafkaConnectionRequestInfo.DEFAULT);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public Producer<K, V> createProducer(Map<String, Object> overrides) throws ResourceException {
+
+        return getProducer(new KafkaConnectionRequestInfo(overrides));
+    }
+
+    /**
+     * Connections are only allocated from the connection manager the first
+     * time a given set of overrides is requested, afterwards the producer is
+     * served from the local cache. Allocation is serialized per request info,
+     * as a connection allocated by a thread losing the race would never be
+     * closed and so would keep the producer open.
+     */
+    @SuppressWarnings("unchecked")
+    private Producer<K, V> getProducer(KafkaConnectionRequestInfo info) throws ResourceException {
+
+        ConcurrentMap<KafkaConnectionRequestInfo, Producer<K, V>> cache = getProducers();
+
+        Producer<K, V> producer = cache.get(info);
+
+        if (producer == null) {
+
+            synchronized (getLocks().computeIfAbsent(info, i -> new Object())) {
+
+                producer = cache.get(info);
+
+                if (producer == null) {
+
+                    producer = (Producer<K, V>) connectionManager.allocateConnection(managedConnectionFactory, info);
+
+                    cache.put(info, producer);
+                }
+            }
+        }
+
         return producer;
     }
 
+    private synchronized ConcurrentMap<KafkaConnectionRequestInfo, Producer<K, V>> getProducers() {
+
+        // transient, so may need recreating after deserialization
+        if (producers == null) {
+
+            producers = new ConcurrentHashMap<>();
+        }
+
+        return producers;
+    }
+
+    private synchronized ConcurrentMap<KafkaConnectionRequestInfo, Object> getLocks() {
+
+        if (locks == null) {
+
+            locks = new ConcurrentHashMap<>();
+        }
+
+        return locks;
+    }
+
     /**
      * {@inheritDoc}
      *
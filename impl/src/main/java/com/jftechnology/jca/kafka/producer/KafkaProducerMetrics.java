@@ -0,0 +1,246 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.producer;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+
+/**
+ * KafkaProducerMetrics - reads the producer level metrics of the producers
+ * currently open for a {@link KafkaManagedConnectionFactory}, registered over
+ * JMX while any are open.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+class KafkaProducerMetrics implements KafkaProducerMetricsMXBean {
+
+    private static final Logger LOGGER = Logger.getLogger(KafkaProducerMetrics.class.getName());
+
+    private static final String PRODUCER_METRICS_GROUP = "producer-metrics";
+
+    private final KafkaManagedConnectionFactory managedConnectionFactory;
+
+    private final String name;
+
+    private ObjectName objectName;
+
+    /**
+     * @since 1.1
+     */
+    KafkaProducerMetrics(KafkaManagedConnectionFactory managedConnectionFactory, String name) {
+
+        this.managedConnectionFactory = managedConnectionFactory;
+        this.name = name;
+    }
+
+    /**
+     * Register with the platform MBean server, failures are logged rather than
+     * failing the connection.
+     *
+     * @since 1.1
+     */
+    synchronized void register() {
+
+        if (objectName != null) {
+
+            return;
+        }
+
+        try {
+
+            objectName = new ObjectName("com.jftechnology.jca.kafka:type=KafkaProducerMetrics,name="
+                    + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+
+        } catch (JMException | SecurityException e) {
+
+            LOGGER.log(Level.WARNING, "KafkaProducerMetrics :: unable to register :: " + name, e);
+            objectName = null;
+        }
+    }
+
+    /**
+     * @since 1.1
+     */
+    synchronized void unregister() {
+
+        if (objectName == null) {
+
+            return;
+        }
+
+        try {
+
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+
+        } catch (JMException | SecurityException e) {
+
+            LOGGER.log(Level.WARNING, "KafkaProducerMetrics :: unable to unregister :: " + name, e);
+        }
+
+        objectName = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public int getProducerCount() {
+
+        return managedConnectionFactory.getProducers().size();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public int getOutstandingConnections() {
+
+        return managedConnectionFactory.getConnectionCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public double getRecordSendRate() {
+
+        return sum("record-send-rate");
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public double getRecordErrorRate() {
+
+        return sum("record-error-rate");
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public double getBatchSizeAvg() {
+
+        return average("batch-size-avg");
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public double getCompressionRateAvg() {
+
+        return average("compression-rate-avg");
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public double getBufferPoolWaitRatio() {
+
+        return values("bufferpool-wait-ratio").stream().mapToDouble(Double::doubleValue).max().orElse(0);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public double getBufferAvailableBytes() {
+
+        return sum("buffer-available-bytes");
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public double getRequestLatencyAvg() {
+
+        return average("request-latency-avg");
+    }
+
+    private double sum(String metric) {
+
+        return values(metric).stream().mapToDouble(Double::doubleValue).sum();
+    }
+
+    private double average(String metric) {
+
+        return values(metric).stream().mapToDouble(Double::doubleValue).average().orElse(0);
+    }
+
+    /**
+     * @return the measured values of a producer level metric, one per
+     *         underlying producer
+     */
+    private List<Double> values(String metric) {
+
+        List<Double> values = new ArrayList<>();
+
+        for (Producer<?, ?> producer : managedConnectionFactory.getProducers()) {
+
+            for (Map.Entry<MetricName, ? extends Metric> entry : producer.metrics().entrySet()) {
+
+                MetricName metricName = entry.getKey();
+
+                if (metric.equals(metricName.name()) && PRODUCER_METRICS_GROUP.equals(metricName.group())) {
+
+                    Object value = entry.getValue().metricValue();
+
+                    if (value instanceof Number && Double.isFinite(((Number) value).doubleValue())) {
+
+                        values.add(((Number) value).doubleValue());
+                    }
+                }
+            }
+        }
+
+        return values;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.producer;
+
+/**
+ * KafkaProducerMetricsMXBean - management interface exposing the producer
+ * metrics of a {@link KafkaManagedConnectionFactory}, combined across the
+ * producers it has open, for sizing batchSize, lingerMs and bufferMemory.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+public interface KafkaProducerMetricsMXBean {
+
+    /**
+     * @return the number of open producers, one per distinct set of
+     *         overrides, each spreading sends over producerCount instances
+     * @since 1.1
+     */
+    int getProducerCount();
+
+    /**
+     * @return the number of managed connections sharing the producers
+     * @since 1.1
+     */
+    int getOutstandingConnections();
+
+    /**
+     * @return records sent per second, summed over the producers
+     * @since 1.1
+     */
+    double getRecordSendRate();
+
+    /**
+     * @return records per second which failed to send, summed over the
+     *         producers
+     * @since 1.1
+     */
+    double getRecordErrorRate();
+
+    /**
+     * @return the average number of bytes per partition batch
+     * @since 1.1
+     */
+    double getBatchSizeAvg();
+
+    /**
+     * @return the average ratio of compressed to uncompressed batch size
+     * @since 1.1
+     */
+    double getCompressionRateAvg();
+
+    /**
+     * @return the fraction of time senders spend blocked waiting for buffer
+     *         memory, the highest of the producers
+     * @since 1.1
+     */
+    double getBufferPoolWaitRatio();
+
+    /**
+     * @return unallocated buffer memory in bytes, summed over the producers
+     * @since 1.1
+     */
+    double getBufferAvailableBytes();
+
+    /**
+     * @return the average produce request latency in ms
+     * @since 1.1
+     */
+    double getRequestLatencyAvg();
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.producer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * KafkaProducerPool - spreads sends over several {@link KafkaProducer}
+ * instances, each with its own record accumulator and sender thread, so
+ * application threads don't all contend on a single producer.
+ * <p>
+ * Producers are picked by default by the record's key, or its partition when
+ * given one, so records of the same key reach their partition in the order
+ * they were sent. Alternatively they are picked by calling thread, keeping
+ * the records sent by one thread in order, or round robin per send, which
+ * spreads load best but gives up ordering - two records of the same key may
+ * go through different producers and reach their partition out of order.
+ * <p>
+ * Transactions are not supported as they can't span producers.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+class KafkaProducerPool<K, V> implements Producer<K, V> {
+
+    /**
+     * Pick producers by record key, or partition when given one.
+     */
+    static final String KEY = "key";
+
+    /**
+     * Pick producers in turn for each send, without ordering.
+     */
+    static final String ROUND_ROBIN = "round-robin";
+
+    /**
+     * Pin each sending thread to a producer.
+     */
+    static final String THREAD = "thread";
+
+    private final List<Producer<K, V>> producers = new ArrayList<>();
+
+    private final AtomicInteger counter = new AtomicInteger();
+
+    private final String selection;
+
+    /**
+     * @param selection one of {@link #KEY}, {@link #THREAD} or
+     *            {@link #ROUND_ROBIN}
+     * @since 1.1
+     */
+    KafkaProducerPool(Properties properties, int count, String selection) {
+
+        this.selection = selection == null ? KEY : selection.trim().toLowerCase(Locale.ROOT);
+
+        if (!Arrays.asList(KEY, THREAD, ROUND_ROBIN).contains(this.selection)) {
+
+            throw new IllegalArgumentException("Unknown producer selection " + selection);
+        }
+
+        String clientId = properties.getProperty(ProducerConfig.CLIENT_ID_CONFIG);
+
+        try {
+
+            for (int i = 0; i < count; i++) {
+
+                Properties producerProperties = new Properties();
+                producerProperties.putAll(properties);
+                producerProperties.setProperty(ProducerConfig.CLIENT_ID_CONFIG, String.format("%s-%d", clientId, i));
+
+                producers.add(new KafkaProducer<>(producerProperties));
+            }
+
+        } catch (RuntimeException e) {
+
+            // don't leak the producers already started
+            close(0, TimeUnit.MILLISECONDS);
+
+            throw e;
+        }
+    }
+
+    private Producer<K, V> next(ProducerRecord<K, V> record) {
+
+        long index;
+
+        if (THREAD.equals(selection)) {
+
+            index = Thread.currentThread().getId();
+
+        } else if (ROUND_ROBIN.equals(selection)) {
+
+            index = counter.getAndIncrement();
+
+        } else if (record.partition() != null) {
+
+            index = record.topic().hashCode() * 31 + record.partition();
+
+        } else if (record.key() != null) {
+
+            Object key = record.key();
+
+            index = key instanceof byte[] ? Arrays.hashCode((byte[]) key) : key.hashCode();
+
+        } else {
+
+            // spread like the default partitioner spreads records without
+            // a key
+            index = counter.getAndIncrement();
+        }
+
+        return producers.get((int) Math.floorMod(index, (long) producers.size()));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public Future<RecordMetadata> send(ProducerRecord<K, V> record) {
+
+        return next(record).send(record);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public Future<RecordMetadata> send(ProducerRecord<K, V> record, Callback callback) {
+
+        return next(record).send(record, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public void flush() {
+
+        producers.forEach(Producer::flush);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public List<PartitionInfo> partitionsFor(String topic) {
+
+        return producers.get(0).partitionsFor(topic);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public Map<MetricName, ? extends Metric> metrics() {
+
+        // metric names are tagged with the producer's client id, so don't
+        // clash
+        Map<MetricName, Metric> metrics = new HashMap<>();
+
+        producers.forEach(p -> metrics.putAll(p.metrics()));
+
+        return metrics;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public void close() {
+
+        producers.forEach(Producer::close);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public void close(long timeout, TimeUnit unit) {
+
+        producers.forEach(p -> p.close(timeout, unit));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public void initTransactions() {
+
+        throw new UnsupportedOperationException("Transactions not supported by a producer pool");
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public void beginTransaction() {
+
+        throw new UnsupportedOperationException("Transactions not supported by a producer pool");
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public void sendOffsetsToTransaction(Map<TopicPartition, OffsetAndMetadata> offsets, String consumerGroupId) {
+
+        throw new UnsupportedOperationException("Transactions not supported by a producer pool");
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public void commitTransaction() {
+
+        throw new UnsupportedOperationException("Transactions not supported by a producer pool");
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public void abortTransaction() {
+
+        throw new UnsupportedOperationException("Transactions not supported by a producer pool");
+    }
+}
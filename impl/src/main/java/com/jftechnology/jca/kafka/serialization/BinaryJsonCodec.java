@@ -0,0 +1,467 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.serialization;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonBuilderFactory;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+import org.apache.kafka.common.errors.SerializationException;
+
+/**
+ * BinaryJsonCodec - compact, schema-less binary encoding of {@link JsonObject}
+ * shared by {@link BinaryJsonSerializer} and {@link BinaryJsonDeserializer}.
+ * <p>
+ * A message is a magic byte and version, a dictionary holding each distinct
+ * member name once, then the root object. Values are a one byte tag followed
+ * by the payload; member names are dictionary indexes, lengths and counts are
+ * unsigned varints and integers are zig-zag varints. Non-integral (or over
+ * long) numbers are carried as scale and unscaled bytes, so no precision is
+ * lost. Objects and arrays may be nested at most MAX_DEPTH deep, so a corrupt
+ * or hostile message can't exhaust the decoding thread's stack.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+final class BinaryJsonCodec {
+
+    static final byte MAGIC = (byte) 0xB7;
+
+    static final byte VERSION = 1;
+
+    static final int MAX_DEPTH = 512;
+
+    private static final byte NULL = 0;
+
+    private static final byte TRUE = 1;
+
+    private static final byte FALSE = 2;
+
+    private static final byte INTEGER = 3;
+
+    private static final byte DECIMAL = 4;
+
+    private static final byte STRING = 5;
+
+    private static final byte ARRAY = 6;
+
+    private static final byte OBJECT = 7;
+
+    private static final JsonBuilderFactory FACTORY = Json.createBuilderFactory(null);
+
+    private BinaryJsonCodec() {
+
+    }
+
+    /**
+     * @throws SerializationException if the object is nested deeper than
+     *         MAX_DEPTH
+     * @since 1.1
+     */
+    static void encode(JsonObject object, ByteArrayOutput out) {
+
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        collectNames(object, dictionary, 1);
+
+        out.write(MAGIC);
+        out.write(VERSION);
+
+        writeVarint(out, dictionary.size());
+
+        for (String name : dictionary.keySet()) {
+
+            writeString(out, name);
+        }
+
+        writeObject(out, object, dictionary);
+    }
+
+    /**
+     * @throws SerializationException if the data is not a supported encoding
+     * @since 1.1
+     */
+    static JsonObject decode(byte[] data) {
+
+        Reader reader = new Reader(data);
+
+        try {
+
+            if (reader.readByte() != MAGIC || reader.readByte() != VERSION) {
+
+                throw new SerializationException("Unsupported binary JSON header");
+            }
+
+            String[] dictionary = new String[reader.readLength()];
+
+            for (int i = 0; i < dictionary.length; i++) {
+
+                dictionary[i] = reader.readString();
+            }
+
+            if (reader.readByte() != OBJECT) {
+
+                throw new SerializationException("Binary JSON root is not an object");
+            }
+
+            return reader.readObject(dictionary);
+
+        } catch (ArrayIndexOutOfBoundsException | NegativeArraySizeException | NumberFormatException e) {
+
+            throw new SerializationException("Truncated or corrupt binary JSON", e);
+        }
+    }
+
+    private static void collectNames(JsonValue value, Map<String, Integer> dictionary, int depth) {
+
+        if (!(value instanceof JsonObject || value instanceof JsonArray)) {
+
+            return;
+        }
+
+        // checked here as this walks the whole object before anything is written
+        if (depth > MAX_DEPTH) {
+
+            throw new SerializationException("JSON nested deeper than " + MAX_DEPTH);
+        }
+
+        if (value instanceof JsonObject) {
+
+            for (Map.Entry<String, JsonValue> member : ((JsonObject) value).entrySet()) {
+
+                dictionary.putIfAbsent(member.getKey(), dictionary.size());
+                collectNames(member.getValue(), dictionary, depth + 1);
+            }
+
+        } else {
+
+            for (JsonValue element : (JsonArray) value) {
+
+                collectNames(element, dictionary, depth + 1);
+            }
+        }
+    }
+
+    private static void writeObject(ByteArrayOutput out, JsonObject object, Map<String, Integer> dictionary) {
+
+        out.write(OBJECT);
+        writeVarint(out, object.size());
+
+        for (Map.Entry<String, JsonValue> member : object.entrySet()) {
+
+            writeVarint(out, dictionary.get(member.getKey()));
+            writeValue(out, member.getValue(), dictionary);
+        }
+    }
+
+    private static void writeValue(ByteArrayOutput out, JsonValue value, Map<String, Integer> dictionary) {
+
+        switch (value.getValueType()) {
+
+        case NULL:
+            out.write(NULL);
+            break;
+
+        case TRUE:
+            out.write(TRUE);
+            break;
+
+        case FALSE:
+            out.write(FALSE);
+            break;
+
+        case NUMBER:
+            writeNumber(out, ((JsonNumber) value).bigDecimalValue());
+            break;
+
+        case STRING:
+            out.write(STRING);
+            writeString(out, ((JsonString) value).getString());
+            break;
+
+        case ARRAY:
+            JsonArray array = (JsonArray) value;
+            out.write(ARRAY);
+            writeVarint(out, array.size());
+
+            for (JsonValue element : array) {
+
+                writeValue(out, element, dictionary);
+            }
+            break;
+
+        default:
+            writeObject(out, (JsonObject) value, dictionary);
+        }
+    }
+
+    private static void writeNumber(ByteArrayOutput out, BigDecimal number) {
+
+        BigInteger unscaled = number.unscaledValue();
+
+        if (number.scale() == 0 && unscaled.bitLength() < Long.SIZE) {
+
+            out.write(INTEGER);
+            writeVarlong(out, zigZag(unscaled.longValue()));
+
+        } else {
+
+            byte[] bytes = unscaled.toByteArray();
+
+            out.write(DECIMAL);
+            writeVarlong(out, zigZag(number.scale()));
+            writeVarint(out, bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+    }
+
+    private static void writeString(ByteArrayOutput out, String value) {
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeVarint(ByteArrayOutput out, int value) {
+
+        writeVarlong(out, value & 0xFFFFFFFFL);
+    }
+
+    private static void writeVarlong(ByteArrayOutput out, long value) {
+
+        while ((value & ~0x7FL) != 0) {
+
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        out.write((int) value);
+    }
+
+    private static long zigZag(long value) {
+
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Cursor over an encoded message.
+     */
+    private static final class Reader {
+
+        private final byte[] data;
+
+        private int position;
+
+        private int depth;
+
+        Reader(byte[] data) {
+
+            this.data = data;
+        }
+
+        byte readByte() {
+
+            return data[position++];
+        }
+
+        long readVarlong() {
+
+            long value = 0;
+
+            for (int shift = 0; shift < Long.SIZE; shift += 7) {
+
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+
+                if (b >= 0) {
+
+                    return value;
+                }
+            }
+
+            throw new SerializationException("Malformed varint in binary JSON");
+        }
+
+        int readLength() {
+
+            long length = readVarlong();
+
+            // a ten byte varint can decode to a negative length
+            if (length < 0 || length > data.length - position) {
+
+                throw new SerializationException("Binary JSON length " + length + " out of range");
+            }
+
+            return (int) length;
+        }
+
+        long readZigZag() {
+
+            long value = readVarlong();
+
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        String readString() {
+
+            int length = readLength();
+            String value = new String(data, position, length, StandardCharsets.UTF_8);
+            position += length;
+
+            return value;
+        }
+
+        BigDecimal readDecimal() {
+
+            int scale = (int) readZigZag();
+            int length = readLength();
+            byte[] bytes = new byte[length];
+            System.arraycopy(data, position, bytes, 0, length);
+            position += length;
+
+            return new BigDecimal(new BigInteger(bytes), scale);
+        }
+
+        void enter() {
+
+            if (++depth > MAX_DEPTH) {
+
+                throw new SerializationException("Binary JSON nested deeper than " + MAX_DEPTH);
+            }
+        }
+
+        JsonObject readObject(String[] dictionary) {
+
+            enter();
+
+            JsonObjectBuilder builder = FACTORY.createObjectBuilder();
+
+            for (int i = readLength(); i > 0; i--) {
+
+                String name = dictionary[(int) readVarlong()];
+                byte tag = readByte();
+
+                switch (tag) {
+
+                case NULL:
+                    builder.addNull(name);
+                    break;
+
+                case TRUE:
+                    builder.add(name, true);
+                    break;
+
+                case FALSE:
+                    builder.add(name, false);
+                    break;
+
+                case INTEGER:
+                    builder.add(name, readZigZag());
+                    break;
+
+                case DECIMAL:
+                    builder.add(name, readDecimal());
+                    break;
+
+                case STRING:
+                    builder.add(name, readString());
+                    break;
+
+                case ARRAY:
+                    builder.add(name, readArray(dictionary));
+                    break;
+
+                case OBJECT:
+                    builder.add(name, readObject(dictionary));
+                    break;
+
+                default:
+                    throw new SerializationException("Unknown binary JSON tag " + tag);
+                }
+            }
+
+            depth--;
+
+            return builder.build();
+        }
+
+        JsonArray readArray(String[] dictionary) {
+
+            enter();
+
+            JsonArrayBuilder builder = FACTORY.createArrayBuilder();
+
+            for (int i = readLength(); i > 0; i--) {
+
+                byte tag = readByte();
+
+                switch (tag) {
+
+                case NULL:
+                    builder.addNull();
+                    break;
+
+                case TRUE:
+                    builder.add(true);
+                    break;
+
+                case FALSE:
+                    builder.add(false);
+                    break;
+
+                case INTEGER:
+                    builder.add(readZigZag());
+                    break;
+
+                case DECIMAL:
+                    builder.add(readDecimal());
+                    break;
+
+                case STRING:
+                    builder.add(readString());
+                    break;
+
+                case ARRAY:
+                    builder.add(readArray(dictionary));
+                    break;
+
+                case OBJECT:
+                    builder.add(readObject(dictionary));
+                    break;
+
+                default:
+                    throw new SerializationException("Unknown binary JSON tag " + tag);
+                }
+            }
+
+            depth--;
+
+            return builder.build();
+        }
+    }
+}
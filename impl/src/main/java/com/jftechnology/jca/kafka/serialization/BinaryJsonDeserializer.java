@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.serialization;
+
+import java.util.Map;
+
+import javax.json.JsonObject;
+
+import org.apache.kafka.common.serialization.Deserializer;
+
+/**
+ * BinaryJsonDeserializer - compact binary to {@link JsonObject}
+ * deserialization of data written by {@link BinaryJsonSerializer}.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+public class BinaryJsonDeserializer implements Deserializer<JsonObject> {
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+
+        // no-op
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public JsonObject deserialize(String topic, byte[] data) {
+
+        if (data == null) {
+
+            return null;
+        }
+
+        return BinaryJsonCodec.decode(data);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public void close() {
+
+        // no-op
+    }
+}
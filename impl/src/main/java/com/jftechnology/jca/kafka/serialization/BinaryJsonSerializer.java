@@ -0,0 +1,74 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.serialization;
+
+import java.util.Map;
+
+import javax.json.JsonObject;
+
+import org.apache.kafka.common.serialization.Serializer;
+
+/**
+ * BinaryJsonSerializer - {@link JsonObject} to compact binary serialization,
+ * writing each member name once in a per message dictionary and numbers as
+ * varints. Pair with {@link BinaryJsonDeserializer}.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+public class BinaryJsonSerializer implements Serializer<JsonObject> {
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+
+        // no-op
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public byte[] serialize(String topic, JsonObject data) {
+
+        if (data == null) {
+
+            return null;
+        }
+
+        ByteArrayOutput out = new ByteArrayOutput(256);
+        BinaryJsonCodec.encode(data, out);
+
+        return out.toByteArray();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public void close() {
+
+        // no-op
+    }
+}
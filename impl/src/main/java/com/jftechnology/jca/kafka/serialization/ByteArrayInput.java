@@ -0,0 +1,102 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.serialization;
+
+import java.io.InputStream;
+
+/**
+ * ByteArrayInput - unsynchronized input stream reading a region of a byte
+ * array in place.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+final class ByteArrayInput extends InputStream {
+
+    private final byte[] data;
+
+    private final int end;
+
+    private int position;
+
+    /**
+     * @since 1.1
+     */
+    ByteArrayInput(byte[] data, int offset, int length) {
+
+        this.data = data;
+        this.position = offset;
+        this.end = offset + length;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public int read() {
+
+        return position < end ? data[position++] & 0xff : -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+
+        if (position >= end) {
+
+            return -1;
+        }
+
+        int count = Math.min(length, end - position);
+
+        System.arraycopy(data, position, buffer, offset, count);
+        position += count;
+
+        return count;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public long skip(long n) {
+
+        long count = Math.max(0, Math.min(n, end - position));
+
+        position += count;
+
+        return count;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public int available() {
+
+        return end - position;
+    }
+}
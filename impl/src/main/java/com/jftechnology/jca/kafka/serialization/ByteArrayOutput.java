@@ -0,0 +1,124 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.serialization;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * ByteArrayOutput - unsynchronized, growable and resettable output stream for
+ * reuse across serializations.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+final class ByteArrayOutput extends OutputStream {
+
+    private byte[] buffer;
+
+    private int count;
+
+    /**
+     * @since 1.1
+     */
+    ByteArrayOutput(int capacity) {
+
+        buffer = new byte[capacity];
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public void write(int b) {
+
+        ensureCapacity(count + 1);
+        buffer[count++] = (byte) b;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+
+        ensureCapacity(count + length);
+        System.arraycopy(bytes, offset, buffer, count, length);
+        count += length;
+    }
+
+    /**
+     * Discard the content, keeping the buffer.
+     *
+     * @since 1.1
+     */
+    void reset() {
+
+        count = 0;
+    }
+
+    /**
+     * @since 1.1
+     */
+    int size() {
+
+        return count;
+    }
+
+    /**
+     * @since 1.1
+     */
+    int capacity() {
+
+        return buffer.length;
+    }
+
+    /**
+     * Replace the buffer with a smaller one, discarding the content.
+     *
+     * @since 1.1
+     */
+    void shrink(int capacity) {
+
+        if (capacity < buffer.length) {
+
+            buffer = new byte[capacity];
+        }
+
+        count = 0;
+    }
+
+    /**
+     * @return a copy of the content
+     * @since 1.1
+     */
+    byte[] toByteArray() {
+
+        return Arrays.copyOf(buffer, count);
+    }
+
+    private void ensureCapacity(int capacity) {
+
+        if (capacity > buffer.length) {
+
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length << 1));
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.serialization;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
+
+import org.apache.kafka.common.serialization.Serializer;
+
+/**
+ * JsonBufferedSerializer - {@link JsonObject} to byte array serialization
+ * writing with a {@link JsonGenerator} into an output buffer which is reused
+ * across records, so the output isn't grown and copied for each one. A
+ * JSON-P 1.0 generator can't be reset, so a new one, along with its writer
+ * and encoder, is still created per record besides the returned array.
+ * Each concurrent call takes a buffer of its own from a pool held by the
+ * serializer, bounded by the processor count, rather than one per thread
+ * which pooled threads would keep after the serializer is closed. Buffers are
+ * sized from a running average of the payload size and shrunk again when an
+ * outlier has grown them well beyond it.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+public class JsonBufferedSerializer implements Serializer<JsonObject> {
+
+    private static final JsonGeneratorFactory FACTORY = Json.createGeneratorFactory(null);
+
+    private static final int MIN_CAPACITY = 256;
+
+    // idle buffers, any beyond the bound are left to the garbage collector
+    private final BlockingQueue<ByteArrayOutput> buffers = new ArrayBlockingQueue<>(
+            Runtime.getRuntime().availableProcessors());
+
+    // approximate, updates from concurrent threads may be lost
+    private volatile double averageSize = MIN_CAPACITY;
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public byte[] serialize(String topic, JsonObject data) {
+
+        if (data == null) {
+
+            return null;
+        }
+
+        ByteArrayOutput out = buffers.poll();
+
+        if (out == null) {
+
+            out = new ByteArrayOutput(targetCapacity());
+
+        } else {
+
+            out.reset();
+        }
+
+        try {
+
+            // JSON-P 1.0 generators only accept values within an object or
+            // array
+            JsonGenerator generator = FACTORY.createGenerator(out).writeStartObject();
+            data.forEach(generator::write);
+            generator.writeEnd().close();
+
+            byte[] bytes = out.toByteArray();
+
+            averageSize += (bytes.length - averageSize) / 16;
+
+            return bytes;
+
+        } finally {
+
+            if (out.capacity() > 4 * targetCapacity()) {
+
+                out.shrink(targetCapacity());
+            }
+
+            buffers.offer(out);
+        }
+    }
+
+    private int targetCapacity() {
+
+        return Math.max(MIN_CAPACITY, (int) (2 * averageSize));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+
+        // no-op
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public void close() {
+
+        buffers.clear();
+    }
+}
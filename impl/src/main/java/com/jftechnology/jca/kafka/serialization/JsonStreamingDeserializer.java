@@ -0,0 +1,100 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.serialization;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import javax.json.JsonObject;
+
+import org.apache.kafka.common.serialization.Deserializer;
+
+/**
+ * JsonStreamingDeserializer - byte array to {@link JsonObject}
+ * deserialization which defers parsing. The returned object wraps the record's
+ * bytes in place and only streams through them, with a
+ * {@link javax.json.stream.JsonParser}, for the members actually read, so
+ * listeners which look at a couple of fields don't pay for building the whole
+ * tree. Malformed JSON is reported when the object is first read rather than
+ * on deserialization.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+public class JsonStreamingDeserializer implements Deserializer<JsonObject> {
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+
+        // no-op
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public JsonObject deserialize(String topic, byte[] data) {
+
+        if (data == null) {
+
+            return null;
+        }
+
+        return new LazyJsonObject(data, 0, data.length);
+    }
+
+    /**
+     * Deserialize the remaining bytes of the buffer, wrapping heap buffers in
+     * place rather than copying them.
+     *
+     * @since 1.1
+     */
+    public JsonObject deserialize(String topic, ByteBuffer data) {
+
+        if (data == null) {
+
+            return null;
+        }
+
+        if (data.hasArray()) {
+
+            return new LazyJsonObject(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        }
+
+        byte[] bytes = new byte[data.remaining()];
+        data.duplicate().get(bytes);
+
+        return new LazyJsonObject(bytes, 0, bytes.length);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public void close() {
+
+        // no-op
+    }
+}
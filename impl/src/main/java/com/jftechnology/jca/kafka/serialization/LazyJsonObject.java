@@ -0,0 +1,482 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.serialization;
+
+import java.io.CharArrayReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonBuilderFactory;
+import javax.json.JsonException;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonReader;
+import javax.json.JsonReaderFactory;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+import javax.json.stream.JsonParserFactory;
+
+/**
+ * LazyJsonObject - {@link JsonObject} view over serialized JSON which is only
+ * parsed on demand. The first lookup streams through the top level of the
+ * document once, indexing every member: simple values are kept as read, while
+ * objects and arrays are skipped over and only built from their recorded
+ * offset when looked up. As when the object is parsed in full, the last of
+ * any duplicate members wins. Iterating, sizing or comparing the object
+ * parses it in full.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+final class LazyJsonObject extends AbstractMap<String, JsonValue> implements JsonObject {
+
+    private static final JsonParserFactory PARSERS = Json.createParserFactory(null);
+
+    private static final JsonReaderFactory READERS = Json.createReaderFactory(null);
+
+    private static final JsonBuilderFactory BUILDERS = Json.createBuilderFactory(null);
+
+    private final byte[] data;
+
+    private final int offset;
+
+    private final int length;
+
+    private Map<String, JsonValue> members;
+
+    // the decoded document and the offsets in it of members not yet built
+    private CharBuffer text;
+
+    private Map<String, Integer> unbuilt;
+
+    private JsonObject object;
+
+    /**
+     * @since 1.1
+     */
+    LazyJsonObject(byte[] data, int offset, int length) {
+
+        this.data = data;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public JsonValue get(Object key) {
+
+        return key instanceof String ? lookup((String) key) : null;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public boolean containsKey(Object key) {
+
+        return get(key) != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public Set<Entry<String, JsonValue>> entrySet() {
+
+        return materialize().entrySet();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public JsonArray getJsonArray(String name) {
+
+        return (JsonArray) get(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public JsonObject getJsonObject(String name) {
+
+        return (JsonObject) get(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public JsonNumber getJsonNumber(String name) {
+
+        return (JsonNumber) get(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public JsonString getJsonString(String name) {
+
+        return (JsonString) get(name);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public String getString(String name) {
+
+        return getJsonString(name).getString();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public String getString(String name, String defaultValue) {
+
+        JsonValue value = get(name);
+
+        return value instanceof JsonString ? ((JsonString) value).getString() : defaultValue;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public int getInt(String name) {
+
+        return getJsonNumber(name).intValue();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public int getInt(String name, int defaultValue) {
+
+        JsonValue value = get(name);
+
+        return value instanceof JsonNumber ? ((JsonNumber) value).intValue() : defaultValue;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public boolean getBoolean(String name) {
+
+        JsonValue value = get(name);
+
+        if (value == null) {
+
+            throw new NullPointerException(name);
+        }
+
+        if (value == JsonValue.TRUE) {
+
+            return true;
+        }
+
+        if (value == JsonValue.FALSE) {
+
+            return false;
+        }
+
+        throw new ClassCastException(name + " is not a boolean");
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public boolean getBoolean(String name, boolean defaultValue) {
+
+        JsonValue value = get(name);
+
+        return value == JsonValue.TRUE || value == JsonValue.FALSE ? value == JsonValue.TRUE : defaultValue;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public boolean isNull(String name) {
+
+        JsonValue value = get(name);
+
+        if (value == null) {
+
+            throw new NullPointerException(name);
+        }
+
+        return value == JsonValue.NULL;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.1
+     */
+    @Override
+    public ValueType getValueType() {
+
+        return ValueType.OBJECT;
+    }
+
+    /**
+     * @return the serialized JSON as is
+     * @since 1.1
+     */
+    @Override
+    public String toString() {
+
+        return new String(data, offset, length, StandardCharsets.UTF_8);
+    }
+
+    private synchronized JsonValue lookup(String name) {
+
+        if (object != null) {
+
+            return object.get(name);
+        }
+
+        if (members == null) {
+
+            index();
+        }
+
+        JsonValue value = members.get(name);
+
+        if (value == null) {
+
+            Integer start = unbuilt.remove(name);
+
+            if (start != null) {
+
+                try (JsonParser parser = parser(start)) {
+
+                    value = read(parser, parser.next());
+                }
+
+                members.put(name, value);
+            }
+        }
+
+        return value;
+    }
+
+    private synchronized JsonObject materialize() {
+
+        if (object == null) {
+
+            try (JsonReader reader = READERS.createReader(new ByteArrayInput(data, offset, length))) {
+
+                object = reader.readObject();
+                members = null;
+                text = null;
+                unbuilt = null;
+            }
+        }
+
+        return object;
+    }
+
+    private void index() {
+
+        text = StandardCharsets.UTF_8.decode(ByteBuffer.wrap(data, offset, length));
+
+        Map<String, JsonValue> read = new HashMap<>();
+        Map<String, Integer> skipped = new HashMap<>();
+
+        try (JsonParser parser = parser(0)) {
+
+            if (!parser.hasNext() || parser.next() != Event.START_OBJECT) {
+
+                throw new JsonException("Not a JSON object");
+            }
+
+            while (parser.next() == Event.KEY_NAME) {
+
+                String key = parser.getString();
+                Event value = parser.next();
+                long start = parser.getLocation().getStreamOffset() - 1;
+
+                if (startsAt(value, start)) {
+
+                    skip(parser, value);
+                    read.remove(key);
+                    skipped.put(key, (int) start);
+
+                } else {
+
+                    read.put(key, read(parser, value));
+                    skipped.remove(key);
+                }
+            }
+        }
+
+        members = read;
+        unbuilt = skipped;
+    }
+
+    private boolean startsAt(Event event, long start) {
+
+        // a provider need not report the location, so check it
+        if (start < 0 || start >= text.remaining()) {
+
+            return false;
+        }
+
+        char c = text.get((int) start);
+
+        return event == Event.START_OBJECT ? c == '{' : event == Event.START_ARRAY && c == '[';
+    }
+
+    private JsonParser parser(int start) {
+
+        return PARSERS.createParser(new CharArrayReader(text.array(), text.arrayOffset() + start,
+                text.remaining() - start));
+    }
+
+    private static void skip(JsonParser parser, Event event) {
+
+        if (event != Event.START_OBJECT && event != Event.START_ARRAY) {
+
+            return;
+        }
+
+        int depth = 1;
+
+        while (depth > 0) {
+
+            switch (parser.next()) {
+
+            case START_OBJECT:
+            case START_ARRAY:
+                depth++;
+                break;
+
+            case END_OBJECT:
+            case END_ARRAY:
+                depth--;
+                break;
+
+            default:
+                break;
+            }
+        }
+    }
+
+    private static JsonValue read(JsonParser parser, Event event) {
+
+        switch (event) {
+
+        case START_OBJECT:
+
+            JsonObjectBuilder object = BUILDERS.createObjectBuilder();
+
+            while (parser.next() == Event.KEY_NAME) {
+
+                String key = parser.getString();
+
+                object.add(key, read(parser, parser.next()));
+            }
+
+            return object.build();
+
+        case START_ARRAY:
+
+            JsonArrayBuilder array = BUILDERS.createArrayBuilder();
+
+            Event next;
+
+            while ((next = parser.next()) != Event.END_ARRAY) {
+
+                array.add(read(parser, next));
+            }
+
+            return array.build();
+
+        case VALUE_STRING:
+
+            return BUILDERS.createArrayBuilder().add(parser.getString()).build().get(0);
+
+        case VALUE_NUMBER:
+
+            return BUILDERS.createArrayBuilder().add(parser.getBigDecimal()).build().get(0);
+
+        case VALUE_TRUE:
+
+            return JsonValue.TRUE;
+
+        case VALUE_FALSE:
+
+            return JsonValue.FALSE;
+
+        case VALUE_NULL:
+
+            return JsonValue.NULL;
+
+        default:
+
+            throw new JsonException("Unexpected JSON parser event " + event);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+
+/**
+ * KafkaOffsetTrackerTest - committable offsets of records delivered in and out
+ * of order.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+public class KafkaOffsetTrackerTest {
+
+    private static final TopicPartition P0 = new TopicPartition("t", 0);
+
+    private static final TopicPartition P1 = new TopicPartition("t", 1);
+
+    private final KafkaOffsetTracker tracker = new KafkaOffsetTracker();
+
+    @Test
+    public void untrackedPartition() {
+
+        assertNull(tracker.getCommittable(P0));
+        assertEquals(0, tracker.getPending(P0));
+        assertTrue(tracker.complete(records(P0, 0)).isEmpty());
+    }
+
+    @Test
+    public void inOrder() {
+
+        tracker.track(records(P0, 0, 1, 2));
+
+        assertEquals(Long.valueOf(0), tracker.getCommittable(P0));
+        assertEquals(3, tracker.getPending(P0));
+
+        assertEquals(committed(P0, 1), tracker.complete(records(P0, 0)));
+        assertEquals(committed(P0, 3), tracker.complete(records(P0, 1, 2)));
+        assertEquals(Long.valueOf(3), tracker.getCommittable(P0));
+        assertEquals(0, tracker.getPending(P0));
+    }
+
+    @Test
+    public void outOfOrder() {
+
+        tracker.track(records(P0, 0, 1, 2, 3));
+
+        // nothing can be committed until the lowest offset has been delivered
+        assertTrue(tracker.complete(records(P0, 2)).isEmpty());
+        assertTrue(tracker.complete(records(P0, 1)).isEmpty());
+        assertEquals(Long.valueOf(0), tracker.getCommittable(P0));
+
+        assertEquals(committed(P0, 3), tracker.complete(records(P0, 0)));
+        assertEquals(committed(P0, 4), tracker.complete(records(P0, 3)));
+    }
+
+    @Test
+    public void gapsInOffsets() {
+
+        // e.g. compacted topics or transaction markers
+        tracker.track(records(P0, 5, 8, 12));
+
+        assertEquals(Long.valueOf(5), tracker.getCommittable(P0));
+        assertTrue(tracker.complete(records(P0, 8)).isEmpty());
+        assertEquals(committed(P0, 12), tracker.complete(records(P0, 5)));
+
+        // the next poll's records
+        tracker.track(records(P0, 15));
+
+        assertEquals(committed(P0, 15), tracker.complete(records(P0, 12)));
+        assertEquals(committed(P0, 16), tracker.complete(records(P0, 15)));
+    }
+
+    @Test
+    public void partitionsIndependent() {
+
+        tracker.track(records(P0, 0, 1));
+        tracker.track(records(P1, 10, 11));
+
+        assertEquals(committed(P1, 11), tracker.complete(records(P1, 10)));
+        assertEquals(Long.valueOf(0), tracker.getCommittable(P0));
+        assertEquals(2, tracker.getPending(P0));
+        assertEquals(1, tracker.getPending(P1));
+    }
+
+    @Test
+    public void saturated() {
+
+        tracker.track(records(P0, 0, 1, 2));
+        tracker.track(records(P1, 0));
+
+        assertEquals(Collections.singleton(P0), tracker.getSaturated(2));
+        assertTrue(tracker.getSaturated(3).isEmpty());
+    }
+
+    @Test
+    public void remove() {
+
+        tracker.track(records(P0, 0, 1));
+        tracker.track(records(P1, 0));
+
+        tracker.remove(Collections.singleton(P0));
+
+        assertNull(tracker.getCommittable(P0));
+        assertEquals(0, tracker.getPending(P0));
+        assertEquals(Long.valueOf(0), tracker.getCommittable(P1));
+
+        // deliveries completing after a revoke are ignored
+        assertTrue(tracker.complete(records(P0, 0, 1)).isEmpty());
+        assertNull(tracker.getCommittable(P0));
+    }
+
+    @Test
+    public void trackedAgainAfterRemove() {
+
+        tracker.track(records(P0, 0, 1, 2));
+        tracker.remove(Collections.singleton(P0));
+
+        // reassigned and fetched from the last commit
+        tracker.track(records(P0, 1, 2));
+
+        assertEquals(Long.valueOf(1), tracker.getCommittable(P0));
+        assertEquals(committed(P0, 3), tracker.complete(records(P0, 1, 2)));
+    }
+
+    private static ConsumerRecords<String, String> records(TopicPartition partition, long... offsets) {
+
+        List<ConsumerRecord<String, String>> records = new ArrayList<>();
+
+        for (long offset : offsets) {
+
+            records.add(new ConsumerRecord<>(partition.topic(), partition.partition(), offset, "k", "v"));
+        }
+
+        return new ConsumerRecords<>(Collections.singletonMap(partition, records));
+    }
+
+    private static Map<TopicPartition, OffsetAndMetadata> committed(TopicPartition partition, long offset) {
+
+        Map<TopicPartition, OffsetAndMetadata> committed = new HashMap<>();
+
+        committed.put(partition, new OffsetAndMetadata(offset));
+
+        return committed;
+    }
+}
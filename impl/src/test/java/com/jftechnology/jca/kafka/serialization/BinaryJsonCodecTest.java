@@ -0,0 +1,319 @@
+/*
+ * Copyright 2018 JF Technology (UK) Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jftechnology.jca.kafka.serialization;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonValue;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.Test;
+
+/**
+ * BinaryJsonCodecTest - round trips of every JSON value type and rejection of
+ * truncated, corrupt and over nested messages.
+ *
+ * @author stephen.flynn@jftechnology.com
+ * @since 1.1
+ */
+public class BinaryJsonCodecTest {
+
+    @Test
+    public void emptyObject() {
+
+        assertRoundTrip(Json.createObjectBuilder().build());
+    }
+
+    @Test
+    public void literals() {
+
+        assertRoundTrip(Json.createObjectBuilder()
+                .addNull("null")
+                .add("true", true)
+                .add("false", false)
+                .build());
+    }
+
+    @Test
+    public void integers() {
+
+        assertRoundTrip(Json.createObjectBuilder()
+                .add("zero", 0)
+                .add("one", 1)
+                .add("minusOne", -1)
+                .add("intMax", Integer.MAX_VALUE)
+                .add("intMin", Integer.MIN_VALUE)
+                .add("longMax", Long.MAX_VALUE)
+                .add("longMin", Long.MIN_VALUE)
+                .add("overLong", BigInteger.valueOf(Long.MAX_VALUE).shiftLeft(8))
+                .add("underLong", BigInteger.valueOf(Long.MIN_VALUE).shiftLeft(8))
+                .build());
+    }
+
+    @Test
+    public void decimals() {
+
+        assertRoundTrip(Json.createObjectBuilder()
+                .add("fraction", new BigDecimal("3.14159265358979323846264338327950288"))
+                .add("negative", new BigDecimal("-0.001"))
+                .add("negativeScale", new BigDecimal("1E+40"))
+                .add("trailingZeros", new BigDecimal("2.500"))
+                .add("double", 0.1d)
+                .build());
+    }
+
+    @Test
+    public void strings() {
+
+        assertRoundTrip(Json.createObjectBuilder()
+                .add("empty", "")
+                .add("ascii", "hello")
+                .add("unicode", "é中😀")
+                .add("escapes", "\"\\\n\t\u0000")
+                .add("ünicode name", "v")
+                .build());
+    }
+
+    @Test
+    public void arrays() {
+
+        assertRoundTrip(Json.createObjectBuilder()
+                .add("empty", Json.createArrayBuilder())
+                .add("mixed", Json.createArrayBuilder()
+                        .addNull()
+                        .add(true)
+                        .add(false)
+                        .add(42)
+                        .add(new BigDecimal("-1.5"))
+                        .add("s")
+                        .add(Json.createArrayBuilder().add(1).add(2))
+                        .add(Json.createObjectBuilder().add("a", 1)))
+                .build());
+    }
+
+    @Test
+    public void nestedObjects() {
+
+        // repeated member names share one dictionary entry
+        assertRoundTrip(Json.createObjectBuilder()
+                .add("id", 1)
+                .add("child", Json.createObjectBuilder()
+                        .add("id", 2)
+                        .add("child", Json.createObjectBuilder()
+                                .add("id", 3)
+                                .add("tags", Json.createArrayBuilder().add("x").add("y"))))
+                .add("empty", Json.createObjectBuilder())
+                .build());
+    }
+
+    @Test
+    public void memberOrderKept() {
+
+        JsonObject object = Json.createObjectBuilder().add("z", 1).add("a", 2).add("m", 3).build();
+
+        assertEquals(Arrays.asList("z", "a", "m"), new ArrayList<>(roundTrip(object).keySet()));
+    }
+
+    @Test
+    public void maximumDepth() {
+
+        assertRoundTrip(nested(BinaryJsonCodec.MAX_DEPTH));
+    }
+
+    @Test(expected = SerializationException.class)
+    public void encodeTooDeep() {
+
+        BinaryJsonCodec.encode(nested(BinaryJsonCodec.MAX_DEPTH + 1), new ByteArrayOutput(64));
+    }
+
+    @Test(expected = SerializationException.class)
+    public void decodeTooDeep() {
+
+        int depth = 100000;
+        ByteArrayOutput out = new ByteArrayOutput(depth * 3 + 8);
+
+        // { "a" : [ [ [ ... ] ] ] }
+        out.write(BinaryJsonCodec.MAGIC);
+        out.write(BinaryJsonCodec.VERSION);
+        out.write(1);
+        out.write(1);
+        out.write('a');
+        out.write(7);
+        out.write(1);
+        out.write(0);
+
+        for (int i = 0; i < depth; i++) {
+
+            out.write(6);
+            out.write(1);
+        }
+
+        out.write(6);
+        out.write(0);
+
+        BinaryJsonCodec.decode(out.toByteArray());
+    }
+
+    @Test
+    public void truncated() {
+
+        byte[] data = encode(Json.createObjectBuilder()
+                .add("name", "value")
+                .add("number", 12345678901L)
+                .add("decimal", new BigDecimal("1.25"))
+                .add("array", Json.createArrayBuilder().add(true).add("s"))
+                .add("object", Json.createObjectBuilder().addNull("n"))
+                .build());
+
+        for (int length = 0; length < data.length; length++) {
+
+            assertRejected(Arrays.copyOf(data, length));
+        }
+    }
+
+    @Test
+    public void badHeader() {
+
+        byte[] data = encode(Json.createObjectBuilder().add("a", 1).build());
+
+        byte[] magic = data.clone();
+        magic[0]++;
+        assertRejected(magic);
+
+        byte[] version = data.clone();
+        version[1]++;
+        assertRejected(version);
+    }
+
+    @Test
+    public void corrupt() {
+
+        byte[] data = encode(Json.createObjectBuilder().add("a", 1).build());
+
+        // header, one name "a", object tag, one member, name index, value tag
+        assertEquals(9, data.length - 1);
+
+        byte[] root = data.clone();
+        root[5] = 6;
+        assertRejected(root);
+
+        byte[] index = data.clone();
+        index[7] = 1;
+        assertRejected(index);
+
+        byte[] tag = data.clone();
+        tag[8] = 99;
+        assertRejected(tag);
+
+        // a decimal with no unscaled bytes
+        byte[] decimal = Arrays.copyOf(data, data.length + 1);
+        decimal[8] = 4;
+        decimal[9] = 0;
+        decimal[10] = 0;
+        assertRejected(decimal);
+    }
+
+    @Test
+    public void negativeLength() {
+
+        byte[] data = encode(Json.createObjectBuilder().add("a", 1).build());
+
+        // dictionary size, name length and member count
+        for (int index : new int[] {2, 3, 6}) {
+
+            assertRejected(negativeLength(data, index));
+        }
+    }
+
+    private static byte[] negativeLength(byte[] data, int index) {
+
+        // a ten byte varint with the sign bit set
+        byte[] varint = {-1, -1, -1, -1, -1, -1, -1, -1, -1, 1};
+        byte[] result = new byte[data.length + varint.length - 1];
+
+        System.arraycopy(data, 0, result, 0, index);
+        System.arraycopy(varint, 0, result, index, varint.length);
+        System.arraycopy(data, index + 1, result, index + varint.length, data.length - index - 1);
+
+        return result;
+    }
+
+    private static JsonObject nested(int depth) {
+
+        JsonArrayBuilder array = Json.createArrayBuilder();
+
+        // the root object is the first level
+        for (int i = 2; i < depth; i++) {
+
+            array = Json.createArrayBuilder().add(array);
+        }
+
+        JsonObjectBuilder root = Json.createObjectBuilder();
+
+        return depth > 1 ? root.add("a", array).build() : root.build();
+    }
+
+    private static byte[] encode(JsonObject object) {
+
+        ByteArrayOutput out = new ByteArrayOutput(64);
+
+        BinaryJsonCodec.encode(object, out);
+
+        return out.toByteArray();
+    }
+
+    private static JsonObject roundTrip(JsonObject object) {
+
+        return BinaryJsonCodec.decode(encode(object));
+    }
+
+    private static void assertRoundTrip(JsonObject object) {
+
+        JsonObject decoded = roundTrip(object);
+
+        assertEquals(object, decoded);
+        assertEquals(object.toString(), decoded.toString());
+
+        // and again, the encoding is deterministic
+        assertArrayEquals(encode(object), encode(decoded));
+    }
+
+    private static void assertRejected(byte[] data) {
+
+        try {
+
+            JsonValue value = BinaryJsonCodec.decode(data);
+
+            fail("Decoded " + Arrays.toString(data) + " as " + value);
+
+        } catch (SerializationException e) {
+
+            // expected
+        }
+    }
+}
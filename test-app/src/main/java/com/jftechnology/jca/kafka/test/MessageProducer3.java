@@ -15,6 +15,8 @@
  */
 package com.jftechnology.jca.kafka.test;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -26,7 +28,6 @@ import javax.json.JsonBuilderFactory;
 import javax.json.JsonObject;
 import javax.resource.ConnectionFactoryDefinition;
 
-import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerRecord;
 
 import com.jftechnology.jca.kafka.api.KafkaProducerFactory;
@@ -59,21 +60,30 @@ public class MessageProducer3 {
 
         try {
 
-            Producer<String, JsonObject> conn = factory.createProducer();
+            JsonBuilderFactory builderFactory = Json.createBuilderFactory(null);
 
-            JsonBuilderFactory factory = Json.createBuilderFactory(null);
+            List<ProducerRecord<String, JsonObject>> records = new ArrayList<>();
 
             for (String topic : TOPICS) {
                 for (String key : KEYS) {
                     for (int i = 0; i < 4; i++) {
 
-                        conn.send(new ProducerRecord<String, JsonObject>(topic, key, factory.createObjectBuilder()
-                                .add("msg", String.format("Hello %s / %d / key %s", topic, i, key)).build()));
+                        records.add(new ProducerRecord<String, JsonObject>(topic, key,
+                                builderFactory.createObjectBuilder()
+                                        .add("msg", String.format("Hello %s / %d / key %s", topic, i, key)).build()));
                     }
                 }
             }
 
-            conn.flush();
+            // completes once all records are acknowledged, without flushing
+            // the producer shared with other beans
+            factory.sendAll(records).whenComplete((metadata, ex) -> {
+
+                if (ex != null) {
+
+                    LOGGER.log(Level.SEVERE, "Send failed", ex);
+                }
+            });
 
         } catch (Exception e) {
 